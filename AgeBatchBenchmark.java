@@ -0,0 +1,42 @@
+package projects;
+
+import circuit.structure.CircuitGenerator;
+
+/**
+ * Proof time per user: one AgeBatchCircuitGenerator proof for N users against N separate
+ * AgeCircuitGenerator proofs (generate + eval + prep + libsnark each).
+ *
+ * usage: AgeBatchBenchmark [N1 N2 ...]   (default 1 2 4 8 16)
+ */
+public class AgeBatchBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int[] batchSizes = { 1, 2, 4, 8, 16 };
+		if (args.length > 0) {
+			batchSizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) { batchSizes[i] = Integer.parseInt(args[i]); }
+		}
+
+		System.out.println("N\tbatch total (ms)\tbatch per user (ms)\tseparate total (ms)\tseparate per user (ms)");
+		for (int n : batchSizes) {
+			long batchTime = timeProof(new AgeBatchCircuitGenerator("age_batch_" + n, n));
+
+			long separateTime = 0;
+			for (int i = 0; i < n; i++) {
+				separateTime += timeProof(new AgeCircuitGenerator("age_example"));
+			}
+
+			System.out.println(n + "\t" + batchTime + "\t" + (batchTime / n) + "\t" + separateTime + "\t" + (separateTime / n));
+		}
+	}
+
+	private static long timeProof(CircuitGenerator generator) throws Exception {
+		long start = System.nanoTime();
+		generator.generateCircuit();
+		generator.evalCircuit();
+		generator.prepFiles();
+		generator.runLibsnark();
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+}
@@ -0,0 +1,76 @@
+package projects;
+
+import java.math.BigInteger;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+import projects.hash.HashFunction;
+import projects.hash.SHA256HashFunction;
+
+/**
+ * Age credentials of batchSize users in one circuit: one AgeCheckGadget per slot
+ * against a shared public threshold, and a single aggregated result that is 1 iff
+ * every user passes.
+ */
+public class AgeBatchCircuitGenerator extends CircuitGenerator {
+
+    private static final int SAMPLE_THRESHOLD = 20;
+
+    private int batchSize;
+
+    private Wire[][] ageStrWitness;
+	private Wire[][] ageHashInput;
+	private Wire thresholdInput;
+
+    private HashFunction hashFunction;
+    private int hashDigestDimension;
+
+    public AgeBatchCircuitGenerator(String circuitName, int batchSize) {
+		this(circuitName, batchSize, new SHA256HashFunction());
+	}
+
+    public AgeBatchCircuitGenerator(String circuitName, int batchSize, HashFunction hashFunction) {
+		super(circuitName);
+		this.batchSize = batchSize;
+		this.hashFunction = hashFunction;
+		this.hashDigestDimension = hashFunction.getDigestWidth();
+	}
+
+	@Override
+	protected void buildCircuit() {
+		ageStrWitness = new Wire[batchSize][];
+		ageHashInput = new Wire[batchSize][];
+		for(int i=0; i<batchSize; i++) {
+			ageStrWitness[i] = createProverWitnessWireArray(AgeCircuitGenerator.AGE_STRING_LENGTH, "age string array " + i); // witness
+			ageHashInput[i] = createInputWireArray(hashDigestDimension, "age hash array " + i); // input
+		}
+		thresholdInput = createInputWire("age threshold"); // input
+
+		Wire passed = getZeroWire();
+		for(int i=0; i<batchSize; i++) {
+			AgeCheckGadget ageCheckGadget = new AgeCheckGadget(ageStrWitness[i], ageHashInput[i], thresholdInput, hashFunction, "user " + i);
+			passed = passed.add(ageCheckGadget.getOutputWires()[0]);
+		}
+		makeOutput(passed.isEqualTo(batchSize), "result: every user passed"); // output
+	}
+
+	@Override
+	public void generateSampleInput(CircuitEvaluator circuitEvaluator) {
+		for(int i=0; i<batchSize; i++) {
+			BigInteger[] ageStr = AgeCircuitGenerator.encodeAge(20 + i % 60); // witness
+			circuitEvaluator.setWireValue(ageStrWitness[i], ageStr);
+			circuitEvaluator.setWireValue(ageHashInput[i], hashFunction.nativeHash(ageStr, 8, ageStr.length)); // input
+		}
+		circuitEvaluator.setWireValue(thresholdInput, SAMPLE_THRESHOLD);
+	}
+
+	public static void main(String[] args) throws Exception {
+		AgeBatchCircuitGenerator generator = new AgeBatchCircuitGenerator("age_batch_16", 16);
+		generator.generateCircuit();
+		generator.evalCircuit();
+		generator.prepFiles();
+		generator.runLibsnark();
+	}
+}
@@ -0,0 +1,65 @@
+package projects;
+
+import java.math.BigInteger;
+
+import circuit.operations.Gadget;
+import circuit.structure.Wire;
+
+import projects.hash.HashFunction;
+
+/**
+ * 1 iff H(ageStr) equals ageHash and the age written in ageStr is at least threshold.
+ *
+ * The age is a linear combination of the (hash bound) characters, so the only range
+ * check is the single decomposition done by the comparison.
+ *
+ * Constraints besides the hash: 12 for the comparison (11-bit split of 2^10 + age - threshold),
+ * 2 per digest word equality and 2 for the final equality, i.e. 30 with SHA-256 (8 words).
+ * SHA256Gadget adds 9 per character (its byte split) to one compression block. The totals
+ * are printed by CircuitProfiler age (or CircuitBenchmark --circuits age).
+ */
+public class AgeCheckGadget extends Gadget {
+
+	private static final int AGE_BIT_WIDTH = 10; // 999 < 2^10
+
+	private Wire[] ageStr;
+	private Wire[] ageHash;
+	private Wire threshold;
+	private HashFunction hashFunction;
+
+	private Wire result;
+
+	public AgeCheckGadget(Wire[] ageStr, Wire[] ageHash, Wire threshold, HashFunction hashFunction, String... desc) {
+		super(desc);
+		this.ageStr = ageStr;
+		this.ageHash = ageHash;
+		this.threshold = threshold;
+		this.hashFunction = hashFunction;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+        // fuction 1: age (read from the string) is greater than or equal threshold
+		Wire age = generator.getZeroWire();
+		for(int i=0; i<ageStr.length; i++) { age = age.mul(10).add(ageStr[i].sub('0')); }
+		Wire check = age.isGreaterThanOrEqual(threshold, AGE_BIT_WIDTH);
+
+        // fuction 2: age hash equal H(age string)
+		Wire[] digest = hashFunction.hash(ageStr, 8, ageStr.length);
+
+		for(int i=0; i<ageHash.length; i++) { check = check.add(digest[i].isEqualTo(ageHash[i])); }
+		result = check.isEqualTo(BigInteger.valueOf(ageHash.length + 1));
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return new Wire[] { result };
+	}
+
+}
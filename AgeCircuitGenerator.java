@@ -5,59 +5,74 @@ import java.math.BigInteger;
 import circuit.eval.CircuitEvaluator;
 import circuit.structure.CircuitGenerator;
 import circuit.structure.Wire;
-import examples.gadgets.hash.SHA256Gadget;
 
+import projects.hash.HashFunction;
+import projects.hash.SHA256HashFunction;
+
+/**
+ * Age credential: the prover knows the committed age string whose hash is public and
+ * shows that the age is at least a public threshold.
+ *
+ * The age string always has AGE_STRING_LENGTH characters (left padded with '0', e.g.
+ * "025"), the age is read from those characters and the threshold is a public input,
+ * so the circuit (and its keys) is the same for every user and every threshold.
+ */
 public class AgeCircuitGenerator extends CircuitGenerator {
 
-    private static final int AGE = 25;
-    
-	private Wire ageWitness;
+    public static final int AGE_STRING_LENGTH = 3; // "000" ~ "999"
+
+    private static final int SAMPLE_AGE = 25;
+    private static final int SAMPLE_THRESHOLD = 20;
+
     private Wire[] ageStrWitness;
 	private Wire[] ageHashInput;
+	private Wire thresholdInput;
 
-    private SHA256Gadget sha2Gadget;
+    private HashFunction hashFunction;
+    private int hashDigestDimension;
 
     public AgeCircuitGenerator(String circuitName) {
+		this(circuitName, new SHA256HashFunction());
+	}
+
+    public AgeCircuitGenerator(String circuitName, HashFunction hashFunction) {
 		super(circuitName);
+		this.hashFunction = hashFunction;
+		this.hashDigestDimension = hashFunction.getDigestWidth();
 	}
 
 	@Override
 	protected void buildCircuit() {
-		ageWitness = createProverWitnessWire("age"); // witness
-        ageStrWitness = createProverWitnessWireArray(Integer.toString(AGE).length(), "age string array"); // witness
-		ageHashInput = createInputWireArray(8, "age hash array"); // input
+        ageStrWitness = createProverWitnessWireArray(AGE_STRING_LENGTH, "age string array"); // witness
+		ageHashInput = createInputWireArray(hashDigestDimension, "age hash array"); // input
+		thresholdInput = createInputWire("age threshold"); // input
 
-        // fuction 1: age is greater than or equal 20
-		Wire result = ageWitness.isGreaterThan(19, 32); // int bit width: 32
-
-        // fuction 2: age hash equal H(age)
-		sha2Gadget = new SHA256Gadget(ageStrWitness, 8, Integer.toString(AGE).length(), false, true);
-		Wire[] digest = sha2Gadget.getOutputWires();
-		// makeOutputArray(digest, "digest");
+		AgeCheckGadget ageCheckGadget = new AgeCheckGadget(ageStrWitness, ageHashInput, thresholdInput, hashFunction);
+		makeOutput(ageCheckGadget.getOutputWires()[0], "result"); // output
+	}
 
-		for(int i=0; i<8; i++) { result = result.add(digest[i].isEqualTo(ageHashInput[i])); }
-		makeOutput(result.isEqualTo(new BigInteger("9")), "result"); // output
+	/** fixed-width attribute encoding: age -> AGE_STRING_LENGTH ASCII characters **/
+	public static BigInteger[] encodeAge(int age) {
+		String ageStr = String.format("%0" + AGE_STRING_LENGTH + "d", age);
+		if (ageStr.length() != AGE_STRING_LENGTH) {
+			throw new IllegalArgumentException("Age does not fit in " + AGE_STRING_LENGTH + " digits: " + age);
+		}
+		BigInteger[] chars = new BigInteger[AGE_STRING_LENGTH];
+		for(int i=0; i<AGE_STRING_LENGTH; i++) { chars[i] = BigInteger.valueOf(ageStr.charAt(i)); }
+		return chars;
 	}
 
 	@Override
 	public void generateSampleInput(CircuitEvaluator circuitEvaluator) {
-        // witness: age
-		circuitEvaluator.setWireValue(ageWitness, AGE);
-
-        // witness: age string
-        for(int i=0; i<Integer.toString(AGE).length(); i++) {
-            circuitEvaluator.setWireValue(ageStrWitness[i], Integer.toString(AGE).charAt(i));
-        }
-		
-        // input: age hash (H(25))
-		circuitEvaluator.setWireValue(ageHashInput[0], new BigInteger("3081070707"));
-        circuitEvaluator.setWireValue(ageHashInput[1], new BigInteger("3447136044"));
-        circuitEvaluator.setWireValue(ageHashInput[2], new BigInteger("1148008091"));
-        circuitEvaluator.setWireValue(ageHashInput[3], new BigInteger("1687433398"));
-        circuitEvaluator.setWireValue(ageHashInput[4], new BigInteger("1517644706"));
-        circuitEvaluator.setWireValue(ageHashInput[5], new BigInteger("2030016492"));
-        circuitEvaluator.setWireValue(ageHashInput[6], new BigInteger("2176544597"));
-        circuitEvaluator.setWireValue(ageHashInput[7], new BigInteger("3001496937"));
+        // witness: age string ("025")
+        BigInteger[] ageStr = encodeAge(SAMPLE_AGE);
+        circuitEvaluator.setWireValue(ageStrWitness, ageStr);
+
+        // input: age hash (H("025")), issued with the credential
+        circuitEvaluator.setWireValue(ageHashInput, hashFunction.nativeHash(ageStr, 8, AGE_STRING_LENGTH));
+
+        // input: threshold chosen by the verifier
+        circuitEvaluator.setWireValue(thresholdInput, SAMPLE_THRESHOLD);
 	}
 
 	public static void main(String[] args) throws Exception {
@@ -67,4 +82,4 @@ public class AgeCircuitGenerator extends CircuitGenerator {
 		generator.prepFiles();
 		generator.runLibsnark();
 	}
-}
\ No newline at end of file
+}
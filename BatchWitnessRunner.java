@@ -0,0 +1,314 @@
+package projects;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+/**
+ * Batch witness mode: the circuit is built once, then a stream of assignments is evaluated
+ * on a bounded worker pool, each job writing its own .in file next to the shared .arith.
+ *
+ * One job per line of the JSONL stream:
+ *
+ *   {"id": "note_17", "inputs": ["0x1f", "42", ...], "witness": ["0x...", ...]}
+ *
+ * "inputs" and "witness" give the values (decimal or 0x hex) of the generator's input and
+ * prover witness wires in creation order, i.e. the wires created in buildCircuit() before any
+ * gadget; witness wires of the gadgets are left out, they are computed by the circuit like in
+ * evalCircuit(). The generator is only read during evaluation: every job has its own
+ * CircuitEvaluator. The pool has a bounded queue and the reading thread runs a job itself
+ * when it is full, so memory stays bounded for any stream length.
+ *
+ * One result line per job in the results file: {"id", "file", "ms", "outputs"} or {"id", "error"}.
+ * The results never go to stdout, where jsnark prints its progress lines from every thread.
+ *
+ * usage: BatchWitnessRunner circuit jobs.jsonl|- [--height h] [--batch b] [--threads n]
+ *                           [--out dir] [--results file (default: dir/results.jsonl)]
+ *        (circuit names as in CircuitBenchmark; stdout only carries logs)
+ */
+public class BatchWitnessRunner {
+
+	private final CircuitGenerator generator;
+	private final File outputDirectory;
+	private final int numOfThreads;
+	private final ArrayList<Wire> inWires = new ArrayList<Wire>();
+
+	/** The circuit of the generator must already be generated **/
+	public BatchWitnessRunner(CircuitGenerator generator, File outputDirectory, int numOfThreads) {
+		this.generator = generator;
+		this.outputDirectory = outputDirectory;
+		this.numOfThreads = numOfThreads;
+		for (Wire w : generator.getInWires()) {
+			if (w.getWireId() != generator.getOneWire().getWireId()) {
+				inWires.add(w);
+			}
+		}
+	}
+
+	/** Evaluates one assignment: the given input and witness values, then the circuit **/
+	public CircuitEvaluator evaluate(BigInteger[] inputs, BigInteger[] witness) {
+		ArrayList<Wire> proverWitnessWires = generator.getProverWitnessWires();
+		if (inputs.length > inWires.size() || witness.length > proverWitnessWires.size()) {
+			throw new IllegalArgumentException("Too many values: " + inputs.length + " inputs, " + witness.length
+					+ " witness values for " + inWires.size() + " input and " + proverWitnessWires.size() + " witness wires");
+		}
+		CircuitEvaluator circuitEvaluator = new CircuitEvaluator(generator);
+		for (int i = 0; i < inputs.length; i++) {
+			circuitEvaluator.setWireValue(inWires.get(i), inputs[i]);
+		}
+		for (int i = 0; i < witness.length; i++) {
+			circuitEvaluator.setWireValue(proverWitnessWires.get(i), witness[i]);
+		}
+		circuitEvaluator.evaluate();
+		return circuitEvaluator;
+	}
+
+	/** .in file of an evaluated assignment, in the format of CircuitEvaluator.writeInputFile() **/
+	public void writeInputFile(CircuitEvaluator circuitEvaluator, File file) throws IOException {
+		PrintWriter writer = new PrintWriter(file);
+		try {
+			Wire oneWire = generator.getOneWire();
+			writer.println(oneWire.getWireId() + " " + circuitEvaluator.getWireValue(oneWire).toString(16));
+			for (Wire w : inWires) {
+				writer.println(w.getWireId() + " " + circuitEvaluator.getWireValue(w).toString(16));
+			}
+			for (Wire w : generator.getProverWitnessWires()) {
+				writer.println(w.getWireId() + " " + circuitEvaluator.getWireValue(w).toString(16));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/** Runs every job of the stream, returns the number of failed jobs **/
+	public int run(Reader jobs, final PrintWriter results) throws IOException, InterruptedException {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(numOfThreads, numOfThreads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(4 * numOfThreads), new ThreadPoolExecutor.CallerRunsPolicy());
+		final AtomicInteger failures = new AtomicInteger();
+		BufferedReader reader = new BufferedReader(jobs);
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				final String jobLine = line;
+				final int jobNumber = lineNumber;
+				pool.execute(new Runnable() {
+					public void run() {
+						String result = runJob(jobLine, jobNumber, failures);
+						synchronized (results) {
+							results.println(result);
+							results.flush();
+						}
+					}
+				});
+			}
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		return failures.get();
+	}
+
+	private String runJob(String line, int lineNumber, AtomicInteger failures) {
+		String id = "line_" + lineNumber;
+		try {
+			Map<String, Object> job = parseJob(line);
+			id = jobId(job, lineNumber);
+			long start = System.nanoTime();
+			CircuitEvaluator circuitEvaluator = evaluate(values(job, "inputs"), values(job, "witness"));
+			File file = new File(outputDirectory, generator.getName() + "_" + id + ".in");
+			writeInputFile(circuitEvaluator, file);
+			long time = (System.nanoTime() - start) / 1000000;
+
+			StringBuilder outputs = new StringBuilder();
+			for (Wire w : generator.getOutWires()) {
+				outputs.append(outputs.length() == 0 ? "\"" : ", \"").append(circuitEvaluator.getWireValue(w).toString(16)).append("\"");
+			}
+			return "{\"id\": \"" + id + "\", \"file\": \"" + escape(file.getPath()) + "\", \"ms\": " + time
+					+ ", \"outputs\": [" + outputs + "]}";
+		} catch (Exception e) {
+			failures.incrementAndGet();
+			return "{\"id\": \"" + escape(id) + "\", \"error\": \"" + escape(String.valueOf(e.getMessage())) + "\"}";
+		}
+	}
+
+	/** "id" of the job, or line_n; ids name the .in files, so they are limited to [A-Za-z0-9_.-] (no paths) **/
+	static String jobId(Map<String, Object> job, int lineNumber) {
+		String id = job.get("id") != null ? (String) job.get("id") : "line_" + lineNumber;
+		if (!id.matches("[A-Za-z0-9_.-]+")) {
+			throw new IllegalArgumentException("Invalid job id \"" + id + "\": ids are limited to [A-Za-z0-9_.-]");
+		}
+		return id;
+	}
+
+	static BigInteger[] values(Map<String, Object> job, String key) {
+		Object value = job.get(key);
+		if (value == null) {
+			return new BigInteger[0];
+		}
+		if (!(value instanceof List)) {
+			throw new IllegalArgumentException("\"" + key + "\" must be an array");
+		}
+		List<?> list = (List<?>) value;
+		BigInteger[] values = new BigInteger[list.size()];
+		for (int i = 0; i < values.length; i++) {
+			String s = (String) list.get(i);
+			values[i] = s.startsWith("0x") ? new BigInteger(s.substring(2), 16) : new BigInteger(s);
+		}
+		return values;
+	}
+
+	/**
+	 * Flat JSON object whose values are strings, numbers or arrays of those; numbers are
+	 * kept as strings so that field elements do not lose precision.
+	 */
+	static Map<String, Object> parseJob(String line) {
+		JsonCursor cursor = new JsonCursor(line);
+		Map<String, Object> job = new LinkedHashMap<String, Object>();
+		cursor.expect('{');
+		if (!cursor.consume('}')) {
+			do {
+				String key = cursor.string();
+				cursor.expect(':');
+				if (cursor.consume('[')) {
+					List<String> list = new ArrayList<String>();
+					if (!cursor.consume(']')) {
+						do {
+							list.add(cursor.scalar());
+						} while (cursor.consume(','));
+						cursor.expect(']');
+					}
+					job.put(key, list);
+				} else {
+					job.put(key, cursor.scalar());
+				}
+			} while (cursor.consume(','));
+			cursor.expect('}');
+		}
+		return job;
+	}
+
+	private static final class JsonCursor {
+		private final String text;
+		private int position;
+
+		JsonCursor(String text) {
+			this.text = text;
+		}
+
+		boolean consume(char c) {
+			skipSpaces();
+			if (position < text.length() && text.charAt(position) == c) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		void expect(char c) {
+			if (!consume(c)) {
+				throw new IllegalArgumentException("Expected '" + c + "' at column " + (position + 1));
+			}
+		}
+
+		String scalar() {
+			skipSpaces();
+			if (position < text.length() && text.charAt(position) == '"') {
+				return string();
+			}
+			int start = position;
+			while (position < text.length() && "-+.0123456789abcdefABCDEFxX".indexOf(text.charAt(position)) >= 0) {
+				position++;
+			}
+			if (start == position) {
+				throw new IllegalArgumentException("Expected a value at column " + (position + 1));
+			}
+			return text.substring(start, position);
+		}
+
+		String string() {
+			expect('"');
+			StringBuilder s = new StringBuilder();
+			while (position < text.length() && text.charAt(position) != '"') {
+				char c = text.charAt(position++);
+				if (c == '\\' && position < text.length()) {
+					c = text.charAt(position++);
+				}
+				s.append(c);
+			}
+			expect('"');
+			return s.toString();
+		}
+
+		private void skipSpaces() {
+			while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+				position++;
+			}
+		}
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	public static void main(String[] args) throws Exception {
+		String circuit = args[0];
+		String jobsFile = args[1];
+		int treeHeight = 4;
+		int batchSize = 4;
+		int numOfThreads = Runtime.getRuntime().availableProcessors();
+		String outputDirectory = ".";
+		String resultsFile = null;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("--height")) { treeHeight = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--batch")) { batchSize = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--threads")) { numOfThreads = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--out")) { outputDirectory = args[++i]; }
+			else if (args[i].equals("--results")) { resultsFile = args[++i]; }
+			else { throw new IllegalArgumentException("Unknown option " + args[i]); }
+		}
+
+		CircuitGenerator generator = CircuitBenchmark.create(circuit, treeHeight, batchSize);
+		generator.generateCircuit();
+		generator.writeCircuitFile(); // shared by every job
+		new File(outputDirectory).mkdirs();
+
+		BatchWitnessRunner runner = new BatchWitnessRunner(generator, new File(outputDirectory), numOfThreads);
+		Reader jobs = jobsFile.equals("-") ? new InputStreamReader(System.in) : new FileReader(jobsFile);
+		PrintWriter results = new PrintWriter(resultsFile != null ? new File(resultsFile) : new File(outputDirectory, "results.jsonl"));
+		long start = System.nanoTime();
+		int failures;
+		try {
+			failures = runner.run(jobs, results);
+		} finally {
+			jobs.close();
+			results.close();
+		}
+		System.err.println("batch done in " + (System.nanoTime() - start) / 1000000 + " ms, " + failures + " failed job(s)");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,531 @@
+package projects;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+import projects.CircuitSnapshot.ArithHandler;
+
+/**
+ * Binary counterpart of the .arith / .in files: name.barith and name.bin.
+ *
+ * Wire ids are varints, zigzag delta coded against the previous id of the same section (the
+ * outputs of consecutive operations are consecutive wires, so most ids take one byte).
+ * Constants are stored once, as 32-bit limbs, and referenced by index. A fixed header holds
+ * the section index, so a reader maps the file and jumps to any section.
+ *
+ *   header (128 bytes): magic, version, numOfWires, numOfOps, then (offset, length) of
+ *                       OPS, CONSTANTS, INPUTS, WITNESSES, OUTPUTS
+ *   OPS:       opcode byte, varint n, varint m, n + m ids[, varint constant index]
+ *   CONSTANTS: varint count, then (limb count byte, 32-bit limbs, most significant first)
+ *   wires:     varint count, ids, then labels (varint length, UTF-8); the one-input wire is
+ *              the first of INPUTS
+ *   .bin:      magic, varint count, then (id, limb count byte, limbs) per assigned wire
+ *
+ * The writer streams through one direct buffer into a FileChannel, operations first, so it
+ * never holds the circuit; the header is written last. The reader maps the file and decodes
+ * the operations straight from the mapping (files up to 2 GB).
+ *
+ * usage: BinaryCircuitFormat circuit [--height h] [--batch b] [--iterations n]
+ *        (benchmark against the text files; circuit names as in CircuitBenchmark)
+ */
+public class BinaryCircuitFormat {
+
+	private static final int CIRCUIT_MAGIC = 0x42415231; // "BAR1"
+	private static final int ASSIGNMENT_MAGIC = 0x42494e31; // "BIN1"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 128;
+	private static final int OPS = 0, CONSTANTS = 1, INPUTS = 2, WITNESSES = 3, OUTPUTS = 4, NUM_OF_SECTIONS = 5;
+	private static final int BUFFER_BYTES = 1 << 20;
+
+	/** Writes the .barith and .bin files of an evaluated generator (instead of prepFiles()) **/
+	public static void prepFiles(CircuitGenerator generator) throws IOException {
+		writeCircuit(generator, new File(generator.getName() + ".barith"));
+		CircuitEvaluator circuitEvaluator = generator.getCircuitEvaluator();
+		List<Wire> wires = new ArrayList<Wire>();
+		wires.add(generator.getOneWire());
+		for (Wire w : generator.getInWires()) {
+			if (w.getWireId() != generator.getOneWire().getWireId()) {
+				wires.add(w);
+			}
+		}
+		wires.addAll(generator.getProverWitnessWires());
+		int[] ids = new int[wires.size()];
+		BigInteger[] values = new BigInteger[wires.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = wires.get(i).getWireId();
+			values[i] = circuitEvaluator.getWireValue(wires.get(i));
+		}
+		writeAssignment(new File(generator.getName() + ".bin"), ids, values);
+	}
+
+	/** The circuit of a generated generator, encoded from the wires of its circuit instructions (no text in between) **/
+	public static void writeCircuit(CircuitGenerator generator, File file) throws IOException {
+		Writer writer = new Writer(file);
+		try {
+			writer.total(generator.getNumWires());
+			for (Instruction instruction : generator.getEvaluationQueue().keySet()) {
+				if (instruction.doneWithinCircuit()) {
+					CircuitSnapshot.handleInstruction(instruction, writer);
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/** Converts a text circuit file **/
+	public static void convert(File arithFile, File file) throws IOException {
+		Writer writer = new Writer(file);
+		BufferedReader reader = new BufferedReader(new FileReader(arithFile));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				CircuitSnapshot.parseArithLine(line, writer);
+			}
+		} finally {
+			reader.close();
+			writer.close();
+		}
+	}
+
+	/** Streaming writer of a .barith file: feed it the content of a circuit in file order, then close it **/
+	public static final class Writer implements ArithHandler, AutoCloseable {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+		private long position = HEADER_BYTES; // file position of the buffer start
+
+		private int numOfWires;
+		private long numOfOps;
+		private int previousId;
+		private final Map<BigInteger, Integer> constantIndex = new HashMap<BigInteger, Integer>();
+		private final List<BigInteger> constants = new ArrayList<BigInteger>();
+		private final List<List<WireEntry>> wires = new ArrayList<List<WireEntry>>(); // per section, used for INPUTS .. OUTPUTS
+
+		private static final class WireEntry {
+			final int id;
+			final String label;
+
+			WireEntry(int id, String label) {
+				this.id = id;
+				this.label = label;
+			}
+		}
+
+		public Writer(File path) throws IOException {
+			file = new RandomAccessFile(path, "rw");
+			file.setLength(0);
+			channel = file.getChannel();
+			for (int section = 0; section < NUM_OF_SECTIONS; section++) {
+				wires.add(new ArrayList<WireEntry>());
+			}
+		}
+
+		public void total(int numOfWires) {
+			this.numOfWires = numOfWires;
+		}
+
+		public void input(int id, String label) {
+			wires.get(INPUTS).add(new WireEntry(id, label));
+		}
+
+		public void witness(int id, String label) {
+			wires.get(WITNESSES).add(new WireEntry(id, label));
+		}
+
+		public void output(int id, String label) {
+			wires.get(OUTPUTS).add(new WireEntry(id, label));
+		}
+
+		public void op(int opcode, int n, int m, int[] ids, BigInteger constant) {
+			try {
+				ensure(1 + 10 + 5 * (n + m) + 5);
+				buffer.put((byte) opcode);
+				putVarint(n);
+				putVarint(m);
+				for (int i = 0; i < n + m; i++) {
+					putId(ids[i]);
+				}
+				if (opcode == CircuitSnapshot.CONST_MUL) {
+					Integer index = constantIndex.get(constant);
+					if (index == null) {
+						index = constants.size();
+						constantIndex.put(constant, index);
+						constants.add(constant);
+					}
+					putVarint(index);
+				}
+				numOfOps++;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				long[] offsets = new long[NUM_OF_SECTIONS];
+				long[] lengths = new long[NUM_OF_SECTIONS];
+				offsets[OPS] = HEADER_BYTES;
+				lengths[OPS] = position + buffer.position() - HEADER_BYTES;
+
+				offsets[CONSTANTS] = position + buffer.position();
+				ensure(5);
+				putVarint(constants.size());
+				for (BigInteger constant : constants) {
+					int[] limbs = toLimbs(constant);
+					ensure(1 + 4 * limbs.length);
+					buffer.put((byte) limbs.length);
+					for (int limb : limbs) { buffer.putInt(limb); }
+				}
+				lengths[CONSTANTS] = position + buffer.position() - offsets[CONSTANTS];
+
+				for (int section = INPUTS; section <= OUTPUTS; section++) {
+					offsets[section] = position + buffer.position();
+					previousId = 0;
+					ensure(5);
+					putVarint(wires.get(section).size());
+					for (WireEntry w : wires.get(section)) {
+						ensure(5);
+						putId(w.id);
+					}
+					for (WireEntry w : wires.get(section)) {
+						byte[] label = w.label.getBytes(StandardCharsets.UTF_8);
+						ensure(5);
+						putVarint(label.length);
+						for (int i = 0; i < label.length; i++) {
+							ensure(1);
+							buffer.put(label[i]);
+						}
+					}
+					lengths[section] = position + buffer.position() - offsets[section];
+				}
+				flush();
+
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+				header.putInt(CIRCUIT_MAGIC).putInt(VERSION).putInt(numOfWires).putLong(numOfOps);
+				for (int section = 0; section < NUM_OF_SECTIONS; section++) {
+					header.putLong(offsets[section]).putLong(lengths[section]);
+				}
+				header.rewind();
+				channel.write(header, 0);
+			} finally {
+				channel.close();
+				file.close();
+			}
+		}
+
+		private void putId(int id) {
+			int delta = id - previousId;
+			putVarint((delta << 1) ^ (delta >> 31));
+			previousId = id;
+		}
+
+		private void putVarint(int value) {
+			while ((value & ~0x7F) != 0) {
+				buffer.put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte) value);
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			buffer.clear();
+		}
+	}
+
+	/** Memory-mapped reader of a .barith file **/
+	public static final class Reader implements AutoCloseable {
+		private final RandomAccessFile file;
+		private final MappedByteBuffer buffer;
+		private final int numOfWires;
+		private final long numOfOps;
+		private final int[] offsets = new int[NUM_OF_SECTIONS];
+		private final BigInteger[] constants;
+
+		public Reader(File path) throws IOException {
+			file = new RandomAccessFile(path, "r");
+			if (file.length() > Integer.MAX_VALUE) {
+				file.close();
+				throw new IOException("Binary circuit files are limited to 2 GB: " + path);
+			}
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			if (buffer.getInt(0) != CIRCUIT_MAGIC || buffer.getInt(4) != VERSION) {
+				file.close();
+				throw new IOException("Not a binary circuit file: " + path);
+			}
+			numOfWires = buffer.getInt(8);
+			numOfOps = buffer.getLong(12);
+			for (int section = 0; section < NUM_OF_SECTIONS; section++) {
+				offsets[section] = (int) buffer.getLong(20 + 16 * section);
+			}
+			ByteBuffer in = section(CONSTANTS);
+			constants = new BigInteger[getVarint(in)];
+			for (int i = 0; i < constants.length; i++) {
+				int[] limbs = new int[in.get()];
+				for (int j = 0; j < limbs.length; j++) { limbs[j] = in.getInt(); }
+				constants[i] = fromLimbs(limbs);
+			}
+		}
+
+		public int getNumWires() {
+			return numOfWires;
+		}
+
+		public long getNumOfOps() {
+			return numOfOps;
+		}
+
+		/** Replays the circuit in file order: total, inputs, witnesses, operations, outputs **/
+		void replay(ArithHandler handler) {
+			handler.total(numOfWires);
+			replayWires(INPUTS, handler);
+			replayWires(WITNESSES, handler);
+			ByteBuffer in = section(OPS);
+			int[] ids = new int[16];
+			int previousId = 0;
+			for (long op = 0; op < numOfOps; op++) {
+				int opcode = in.get();
+				int n = getVarint(in);
+				int m = getVarint(in);
+				if (ids.length < n + m) {
+					ids = new int[2 * (n + m)];
+				}
+				for (int i = 0; i < n + m; i++) {
+					int zigzag = getVarint(in);
+					previousId += (zigzag >>> 1) ^ -(zigzag & 1);
+					ids[i] = previousId;
+				}
+				BigInteger constant = opcode == CircuitSnapshot.CONST_MUL ? constants[getVarint(in)] : null;
+				handler.op(opcode, n, m, ids, constant);
+			}
+			replayWires(OUTPUTS, handler);
+		}
+
+		/** Loads the circuit for evaluation **/
+		public CircuitSnapshot toSnapshot() {
+			CircuitSnapshot.Builder builder = new CircuitSnapshot.Builder();
+			replay(builder);
+			return builder.build(Config.FIELD_PRIME);
+		}
+
+		private void replayWires(int section, ArithHandler handler) {
+			ByteBuffer in = section(section);
+			int[] ids = new int[getVarint(in)];
+			int previousId = 0;
+			for (int i = 0; i < ids.length; i++) {
+				int zigzag = getVarint(in);
+				previousId += (zigzag >>> 1) ^ -(zigzag & 1);
+				ids[i] = previousId;
+			}
+			for (int i = 0; i < ids.length; i++) {
+				byte[] label = new byte[getVarint(in)];
+				in.get(label);
+				String text = new String(label, StandardCharsets.UTF_8);
+				if (section == INPUTS) { handler.input(ids[i], text); }
+				else if (section == WITNESSES) { handler.witness(ids[i], text); }
+				else { handler.output(ids[i], text); }
+			}
+		}
+
+		private ByteBuffer section(int section) {
+			ByteBuffer view = buffer.duplicate();
+			view.position(offsets[section]);
+			return view;
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+
+	/** .bin file: the given wires and their values **/
+	public static void writeAssignment(File path, int[] ids, BigInteger[] values) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+			buffer.putInt(ASSIGNMENT_MAGIC);
+			putVarint(buffer, ids.length);
+			int previousId = 0;
+			for (int i = 0; i < ids.length; i++) {
+				if (buffer.remaining() < 64) {
+					buffer.flip();
+					while (buffer.hasRemaining()) { channel.write(buffer); }
+					buffer.clear();
+				}
+				int delta = ids[i] - previousId;
+				putVarint(buffer, (delta << 1) ^ (delta >> 31));
+				previousId = ids[i];
+				int[] limbs = toLimbs(values[i]);
+				buffer.put((byte) limbs.length);
+				for (int limb : limbs) { buffer.putInt(limb); }
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) { channel.write(buffer); }
+		} finally {
+			file.close();
+		}
+	}
+
+	/** Values of a .bin file, by wire id (null for the wires it does not assign) **/
+	public static BigInteger[] readAssignment(File path, int numOfWires) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			MappedByteBuffer in = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			if (in.getInt() != ASSIGNMENT_MAGIC) {
+				throw new IOException("Not a binary assignment file: " + path);
+			}
+			BigInteger[] values = new BigInteger[numOfWires];
+			int count = getVarint(in);
+			int previousId = 0;
+			for (int i = 0; i < count; i++) {
+				int zigzag = getVarint(in);
+				previousId += (zigzag >>> 1) ^ -(zigzag & 1);
+				int[] limbs = new int[in.get()];
+				for (int j = 0; j < limbs.length; j++) { limbs[j] = in.getInt(); }
+				values[previousId] = fromLimbs(limbs);
+			}
+			return values;
+		} finally {
+			file.close();
+		}
+	}
+
+	private static void putVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int getVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	/** 32-bit limbs, most significant first; at least one **/
+	private static int[] toLimbs(BigInteger value) {
+		int[] limbs = new int[Math.max(1, (value.bitLength() + 31) / 32)];
+		for (int i = 0; i < limbs.length; i++) {
+			limbs[limbs.length - 1 - i] = value.shiftRight(32 * i).intValue();
+		}
+		return limbs;
+	}
+
+	private static BigInteger fromLimbs(int[] limbs) {
+		BigInteger value = BigInteger.ZERO;
+		for (int limb : limbs) {
+			value = value.shiftLeft(32).or(BigInteger.valueOf(limb & 0xFFFFFFFFL));
+		}
+		return value;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int treeHeight = 4;
+		int batchSize = 4;
+		int iterations = 5;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("--height")) { treeHeight = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--batch")) { batchSize = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--iterations")) { iterations = Integer.parseInt(args[++i]); }
+			else { throw new IllegalArgumentException("Unknown option " + args[i]); }
+		}
+		CircuitGenerator generator = CircuitBenchmark.create(args[0], treeHeight, batchSize);
+		generator.generateCircuit();
+		generator.evalCircuit();
+		String name = generator.getName();
+		File arith = new File(name + ".arith");
+		File in = new File(name + ".in");
+		File barith = new File(name + ".barith");
+		File bin = new File(name + ".bin");
+
+		long[] textWrite = new long[iterations], textRead = new long[iterations];
+		long[] binaryWrite = new long[iterations], binaryRead = new long[iterations];
+		for (int it = 0; it < iterations; it++) {
+			long start = System.nanoTime();
+			generator.prepFiles();
+			textWrite[it] = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			CircuitSnapshot.fromArith(arith);
+			readTextAssignment(in);
+			textRead[it] = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			prepFiles(generator);
+			binaryWrite[it] = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Reader reader = new Reader(barith);
+			reader.toSnapshot();
+			readAssignment(bin, reader.getNumWires());
+			reader.close();
+			binaryRead[it] = System.nanoTime() - start;
+		}
+		System.out.println(String.format("%-8s %12s %12s %12s", "format", "size KB", "write ms", "read ms"));
+		System.out.println(String.format("%-8s %12d %12.2f %12.2f", "text", (arith.length() + in.length()) / 1024,
+				min(textWrite) / 1e6, min(textRead) / 1e6));
+		System.out.println(String.format("%-8s %12d %12.2f %12.2f", "binary", (barith.length() + bin.length()) / 1024,
+				min(binaryWrite) / 1e6, min(binaryRead) / 1e6));
+	}
+
+	private static void readTextAssignment(File in) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(in));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int space = line.indexOf(' ');
+				Integer.parseInt(line.substring(0, space));
+				new BigInteger(line.substring(space + 1), 16);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static long min(long[] values) {
+		long min = Long.MAX_VALUE;
+		for (long value : values) { min = Math.min(min, value); }
+		return min;
+	}
+
+}
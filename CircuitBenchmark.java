@@ -0,0 +1,208 @@
+package projects;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import circuit.structure.CircuitGenerator;
+
+import projects.elgamal.ElGamalBatchCircuitGenerator;
+import projects.elgamal.ElGamalCircuitGenerator;
+import projects.hash.MTMSHA256CircuitGenerator;
+import projects.zcash.ZcashInitCircuitGenerator;
+import projects.zcash.ZcashJoinSplitCircuitGenerator;
+import projects.zcash.ZcashNoteInsertionCircuitGenerator;
+import projects.zcash.ZcashPourCircuitGenerator;
+
+/**
+ * Benchmark of the generator phases (generateCircuit, evalCircuit, prepFiles and, with
+ * --libsnark, runLibsnark) for every circuit of the project, JMH style: warmup iterations
+ * are run and discarded, then every measured iteration builds a fresh generator and times
+ * each phase. Reported per phase: mean / min time, allocated bytes per operation and
+ * allocation rate (current thread, HotSpot only), and the constraint and wire counts.
+ *
+ * usage: CircuitBenchmark [--circuits age,mtm,...] [--height 2,8,16] [--batch 1,4,16]
+ *                         [--warmup 2] [--iterations 5] [--libsnark] [--binary] [--csv file]
+ *
+ * --height applies to the tree circuits, --batch to the batch circuits; combinations a circuit
+ * does not support (e.g. a batch larger than the tree) are skipped. --binary writes the
+ * files of BinaryCircuitFormat in the prep phase instead of the text .arith / .in files.
+ */
+public class CircuitBenchmark {
+
+	public static final String[] CIRCUITS = { "age", "age_batch", "elgamal", "elgamal_ec", "elgamal_batch", "mtm",
+			"zcash_init", "zcash_pour", "zcash_joinsplit", "zcash_insert" };
+
+	private static final String[] PHASES = { "generate", "eval", "prep", "libsnark" };
+
+	public static void main(String[] args) throws Exception {
+		List<String> circuits = Arrays.asList(CIRCUITS);
+		int[] heights = { 2, 8, 16 };
+		int[] batchSizes = { 1, 4, 16 };
+		int warmup = 2;
+		int iterations = 5;
+		boolean libsnark = false;
+		boolean binary = false;
+		String csvFile = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--circuits")) { circuits = Arrays.asList(args[++i].split(",")); }
+			else if (args[i].equals("--height")) { heights = parseInts(args[++i]); }
+			else if (args[i].equals("--batch")) { batchSizes = parseInts(args[++i]); }
+			else if (args[i].equals("--warmup")) { warmup = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--iterations")) { iterations = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--libsnark")) { libsnark = true; }
+			else if (args[i].equals("--binary")) { binary = true; }
+			else if (args[i].equals("--csv")) { csvFile = args[++i]; }
+			else { throw new IllegalArgumentException("Unknown option " + args[i]); }
+		}
+		int numOfPhases = libsnark ? 4 : 3;
+
+		List<String> rows = new ArrayList<String>();
+		rows.add("circuit,height,batch,phase,mean_ms,min_ms,alloc_mb_per_op,alloc_mb_per_s,constraints,wires");
+		System.out.println(String.format("%-16s %6s %6s %-9s %10s %10s %12s %12s %12s %10s", "circuit", "height",
+				"batch", "phase", "mean ms", "min ms", "alloc MB/op", "alloc MB/s", "constraints", "wires"));
+
+		for (String circuit : circuits) {
+			int[] circuitHeights = usesHeight(circuit) ? heights : new int[] { 0 };
+			int[] circuitBatchSizes = usesBatch(circuit) ? batchSizes : new int[] { 0 };
+			for (int height : circuitHeights) {
+				for (int batchSize : circuitBatchSizes) {
+					if (!supports(circuit, height, batchSize)) {
+						System.out.println(String.format("%-16s %6d %6d skipped (not supported)", circuit, height, batchSize));
+						continue;
+					}
+					long[][] times = new long[numOfPhases][iterations];
+					long[][] allocations = new long[numOfPhases][iterations];
+					int constraints = 0;
+					int wires = 0;
+					for (int it = -warmup; it < iterations; it++) {
+						CircuitGenerator generator = create(circuit, height, batchSize);
+						long[] time = new long[numOfPhases];
+						long[] allocated = new long[numOfPhases];
+						for (int phase = 0; phase < numOfPhases; phase++) {
+							long bytes = allocatedBytes();
+							long start = System.nanoTime();
+							runPhase(generator, phase, binary);
+							time[phase] = System.nanoTime() - start;
+							allocated[phase] = allocatedBytes() - bytes;
+						}
+						if (it >= 0) {
+							for (int phase = 0; phase < numOfPhases; phase++) {
+								times[phase][it] = time[phase];
+								allocations[phase][it] = allocated[phase];
+							}
+						}
+						constraints = generator.getNumOfConstraints();
+						wires = generator.getNumWires();
+					}
+
+					for (int phase = 0; phase < numOfPhases; phase++) {
+						double meanMs = mean(times[phase]) / 1e6;
+						double minMs = min(times[phase]) / 1e6;
+						double allocMb = mean(allocations[phase]) / (1 << 20);
+						double allocRate = meanMs > 0 ? allocMb / (meanMs / 1000) : 0;
+						System.out.println(String.format("%-16s %6d %6d %-9s %10.2f %10.2f %12.2f %12.1f %12d %10d", circuit,
+								height, batchSize, PHASES[phase], meanMs, minMs, allocMb, allocRate, constraints, wires));
+						rows.add(String.format("%s,%d,%d,%s,%.3f,%.3f,%.3f,%.1f,%d,%d", circuit, height, batchSize,
+								PHASES[phase], meanMs, minMs, allocMb, allocRate, constraints, wires));
+					}
+				}
+			}
+		}
+
+		if (csvFile != null) {
+			PrintWriter writer = new PrintWriter(csvFile);
+			for (String row : rows) { writer.println(row); }
+			writer.close();
+		}
+	}
+
+	public static CircuitGenerator create(String circuit, int treeHeight, int batchSize) {
+		if (circuit.equals("age")) { return new AgeCircuitGenerator("bench_age"); }
+		if (circuit.equals("age_batch")) { return new AgeBatchCircuitGenerator("bench_age_batch_" + batchSize, batchSize); }
+		if (circuit.equals("elgamal")) { return new ElGamalCircuitGenerator("bench_elgamal"); }
+		if (circuit.equals("elgamal_ec")) { return new ElGamalCircuitGenerator("bench_elgamal_ec", true); }
+		if (circuit.equals("elgamal_batch")) { return new ElGamalBatchCircuitGenerator("bench_elgamal_batch_" + batchSize, batchSize, false); }
+		if (circuit.equals("mtm")) { return new MTMSHA256CircuitGenerator("bench_tree_" + treeHeight, treeHeight); }
+		if (circuit.equals("zcash_init")) { return new ZcashInitCircuitGenerator("bench_zcash_init"); }
+		if (circuit.equals("zcash_pour")) { return new ZcashPourCircuitGenerator("bench_zcash_pour_" + treeHeight, treeHeight); }
+		if (circuit.equals("zcash_joinsplit")) { return new ZcashJoinSplitCircuitGenerator("bench_zcash_joinsplit_" + treeHeight, treeHeight); }
+		if (circuit.equals("zcash_insert")) {
+			return new ZcashNoteInsertionCircuitGenerator("bench_zcash_insert_" + treeHeight + "_" + batchSize, treeHeight, batchSize);
+		}
+		throw new IllegalArgumentException("Unknown circuit " + circuit + ", expected one of " + Arrays.toString(CIRCUITS));
+	}
+
+	private static boolean usesHeight(String circuit) {
+		return circuit.equals("mtm") || circuit.equals("zcash_pour") || circuit.equals("zcash_joinsplit")
+				|| circuit.equals("zcash_insert");
+	}
+
+	private static boolean usesBatch(String circuit) {
+		return circuit.endsWith("_batch") || circuit.equals("zcash_insert");
+	}
+
+	/** (height, batch) pairs a circuit can be built and sampled with **/
+	public static boolean supports(String circuit, int treeHeight, int batchSize) {
+		if (usesBatch(circuit) && batchSize < 1) {
+			return false;
+		}
+		if (circuit.equals("zcash_insert")) {
+			return ZcashNoteInsertionCircuitGenerator.fits(treeHeight, batchSize);
+		}
+		if (circuit.equals("zcash_joinsplit")) {
+			return treeHeight >= 2; // the sample tree holds 3 coins
+		}
+		if (circuit.equals("zcash_pour")) {
+			return treeHeight >= 1; // the sample tree holds 2 coins
+		}
+		return !usesHeight(circuit) || treeHeight >= 1;
+	}
+
+	private static void runPhase(CircuitGenerator generator, int phase, boolean binary) throws Exception {
+		switch (phase) {
+		case 0: generator.generateCircuit(); break;
+		case 1: generator.evalCircuit(); break;
+		case 2:
+			if (binary) {
+				BinaryCircuitFormat.prepFiles(generator);
+			} else {
+				generator.prepFiles();
+			}
+			break;
+		default: generator.runLibsnark(); break;
+		}
+	}
+
+	/** bytes allocated by the current thread so far, 0 if the JVM does not tell **/
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	private static int[] parseInts(String list) {
+		String[] parts = list.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) { values[i] = Integer.parseInt(parts[i].trim()); }
+		return values;
+	}
+
+	private static double mean(long[] values) {
+		double sum = 0;
+		for (long value : values) { sum += value; }
+		return values.length == 0 ? 0 : sum / values.length;
+	}
+
+	private static double min(long[] values) {
+		long min = Long.MAX_VALUE;
+		for (long value : values) { min = Math.min(min, value); }
+		return values.length == 0 ? 0 : min;
+	}
+
+}
@@ -0,0 +1,292 @@
+package projects;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.structure.CircuitGenerator;
+
+/**
+ * Constraint, wire and witness evaluation time profile per gadget.
+ *
+ * The profiler listens to the GadgetScopes events of the current thread (gadget
+ * constructions and a few hot spots inside them). Between two of these events, every new
+ * constraint, wire and evaluation instruction belongs to the innermost open scope. Instances with the same name under the same parent are merged, so the
+ * report is a tree of "what is built where" with instance counts.
+ *
+ * The witness is then evaluated instruction by instruction (as CircuitEvaluator.evaluate()
+ * does) and the time of every instruction is charged to the scope that created it.
+ *
+ * usage: CircuitProfiler circuit [--height h] [--batch b] [--json file]
+ *                                [--baseline file [--write-baseline]]
+ *        (circuit names as in CircuitBenchmark; exits with 1 if a baseline is exceeded)
+ */
+public final class CircuitProfiler implements GadgetScopes.Listener {
+
+	/** one scope of the report: all instances of a gadget (or section) with the same name under the same parent **/
+	public static final class Node {
+		private final String name;
+		private final Node parent;
+		private final Map<String, Node> children = new LinkedHashMap<String, Node>();
+		private int instances;
+		private long selfConstraints;
+		private long selfWires;
+		private long selfInstructions;
+		private long selfEvalNanos;
+
+		private Node(String name, Node parent) {
+			this.name = name;
+			this.parent = parent;
+		}
+
+		public String getName() { return name; }
+		public int getInstances() { return instances; }
+		public long getSelfConstraints() { return selfConstraints; }
+		public Iterable<Node> getChildren() { return children.values(); }
+
+		public String getPath() {
+			return parent == null ? name : parent.getPath() + "/" + name;
+		}
+
+		public long getConstraints() {
+			long total = selfConstraints;
+			for (Node child : children.values()) { total += child.getConstraints(); }
+			return total;
+		}
+
+		public long getWires() {
+			long total = selfWires;
+			for (Node child : children.values()) { total += child.getWires(); }
+			return total;
+		}
+
+		public long getInstructions() {
+			long total = selfInstructions;
+			for (Node child : children.values()) { total += child.getInstructions(); }
+			return total;
+		}
+
+		public long getEvalNanos() {
+			long total = selfEvalNanos;
+			for (Node child : children.values()) { total += child.getEvalNanos(); }
+			return total;
+		}
+	}
+
+	private final CircuitGenerator generator;
+	private final Node root;
+	private final Deque<Node> stack = new ArrayDeque<Node>();
+
+	private long markConstraints, markWires;
+	private int markInstructions;
+	private final List<Node> instructionOwners = new ArrayList<Node>(); // owner of every evaluation instruction
+
+	private CircuitProfiler(CircuitGenerator generator) {
+		this.generator = generator;
+		this.root = new Node(generator.getName(), null);
+		root.instances = 1;
+		stack.push(root);
+	}
+
+	/**
+	 * Profile the construction of this generator's circuit: call before generateCircuit(), on the same thread.
+	 * Fails if a StreamingCircuitWriter (or another profiler) is attached to the thread.
+	 */
+	public static CircuitProfiler attach(CircuitGenerator generator) {
+		CircuitProfiler profiler = new CircuitProfiler(generator);
+		GadgetScopes.register(profiler);
+		return profiler;
+	}
+
+	public void enter(String name) {
+		mark();
+		Node parent = stack.peek();
+		Node node = parent.children.get(name);
+		if (node == null) {
+			node = new Node(name, parent);
+			parent.children.put(name, node);
+		}
+		node.instances++;
+		stack.push(node);
+	}
+
+	public void exit() {
+		mark();
+		if (stack.size() > 1) {
+			stack.pop();
+		}
+	}
+
+	/** Call after generateCircuit(): charges the rest to the generator and detaches the profiler **/
+	public void finishBuild() {
+		mark();
+		GadgetScopes.unregister(this);
+	}
+
+	/** Evaluates the sample input instruction by instruction, charging the time to the scopes **/
+	public void profileEvaluation() {
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		int index = 0;
+		for (Instruction instruction : generator.getEvaluationQueue().keySet()) {
+			long start = System.nanoTime();
+			instruction.evaluate(evaluator);
+			long time = System.nanoTime() - start;
+			Node owner = index < instructionOwners.size() ? instructionOwners.get(index) : root;
+			owner.selfEvalNanos += time;
+			index++;
+		}
+	}
+
+	private void mark() {
+		long constraints = generator.getNumOfConstraints();
+		long wires = generator.getNumWires();
+		int instructions = generator.getEvaluationQueue().size();
+		Node current = stack.peek();
+		current.selfConstraints += constraints - markConstraints;
+		current.selfWires += wires - markWires;
+		current.selfInstructions += instructions - markInstructions;
+		for (int i = markInstructions; i < instructions; i++) {
+			instructionOwners.add(current);
+		}
+		markConstraints = constraints;
+		markWires = wires;
+		markInstructions = instructions;
+	}
+
+	public Node getRoot() {
+		return root;
+	}
+
+	public void printReport(PrintWriter out) {
+		out.println(String.format("%-60s %6s %12s %12s %10s %10s", "scope", "count", "constraints", "self", "wires", "eval ms"));
+		printNode(out, root, "");
+		out.flush();
+	}
+
+	private void printNode(PrintWriter out, Node node, String indent) {
+		out.println(String.format("%-60s %6d %12d %12d %10d %10.2f", indent + node.name, node.instances,
+				node.getConstraints(), node.selfConstraints, node.getWires(), node.getEvalNanos() / 1e6));
+		for (Node child : node.children.values()) {
+			printNode(out, child, indent + "  ");
+		}
+	}
+
+	public String toJson() {
+		StringBuilder json = new StringBuilder();
+		appendJson(json, root, "");
+		return json.toString();
+	}
+
+	private void appendJson(StringBuilder json, Node node, String indent) {
+		json.append(indent).append("{\"name\": \"").append(node.name.replace("\\", "\\\\").replace("\"", "\\\""))
+				.append("\", \"instances\": ").append(node.instances)
+				.append(", \"constraints\": ").append(node.getConstraints())
+				.append(", \"selfConstraints\": ").append(node.selfConstraints)
+				.append(", \"wires\": ").append(node.getWires())
+				.append(", \"instructions\": ").append(node.getInstructions())
+				.append(", \"evalNanos\": ").append(node.getEvalNanos())
+				.append(", \"children\": [");
+		boolean first = true;
+		for (Node child : node.children.values()) {
+			json.append(first ? "\n" : ",\n");
+			appendJson(json, child, indent + "  ");
+			first = false;
+		}
+		json.append(first ? "]}" : "\n" + indent + "]}");
+	}
+
+	/** constraints (inclusive) of every scope, by path **/
+	public void writeBaseline(File file) throws IOException {
+		Properties baseline = new Properties();
+		collect(root, baseline);
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			baseline.store(out, "constraints per scope of " + root.name);
+		} finally {
+			out.close();
+		}
+	}
+
+	/** scopes with more constraints than in the baseline (scopes missing from the baseline are not checked) **/
+	public List<String> checkBaseline(File file) throws IOException {
+		Properties baseline = new Properties();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			baseline.load(in);
+		} finally {
+			in.close();
+		}
+		Properties current = new Properties();
+		collect(root, current);
+		List<String> violations = new ArrayList<String>();
+		for (String path : baseline.stringPropertyNames()) {
+			String value = current.getProperty(path);
+			long allowed = Long.parseLong(baseline.getProperty(path).trim());
+			if (value != null && Long.parseLong(value) > allowed) {
+				violations.add(path + ": " + value + " constraints, baseline " + allowed);
+			}
+		}
+		return violations;
+	}
+
+	private void collect(Node node, Properties properties) {
+		properties.setProperty(node.getPath(), Long.toString(node.getConstraints()));
+		for (Node child : node.children.values()) {
+			collect(child, properties);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		String circuit = args[0];
+		int treeHeight = 4;
+		int batchSize = 4;
+		String jsonFile = null;
+		String baselineFile = null;
+		boolean writeBaseline = false;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("--height")) { treeHeight = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--batch")) { batchSize = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--json")) { jsonFile = args[++i]; }
+			else if (args[i].equals("--baseline")) { baselineFile = args[++i]; }
+			else if (args[i].equals("--write-baseline")) { writeBaseline = true; }
+			else { throw new IllegalArgumentException("Unknown option " + args[i]); }
+		}
+
+		CircuitGenerator generator = CircuitBenchmark.create(circuit, treeHeight, batchSize);
+		CircuitProfiler profiler = attach(generator);
+		generator.generateCircuit();
+		profiler.finishBuild();
+		profiler.profileEvaluation();
+		profiler.printReport(new PrintWriter(System.out));
+
+		if (jsonFile != null) {
+			PrintWriter writer = new PrintWriter(jsonFile);
+			writer.println(profiler.toJson());
+			writer.close();
+		}
+		if (baselineFile != null) {
+			if (writeBaseline) {
+				profiler.writeBaseline(new File(baselineFile));
+			} else {
+				List<String> violations = profiler.checkBaseline(new File(baselineFile));
+				for (String violation : violations) { System.out.println("over baseline: " + violation); }
+				if (!violations.isEmpty()) {
+					System.exit(1);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,524 @@
+package projects;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import circuit.config.Config;
+import circuit.eval.Instruction;
+import circuit.operations.primitive.BasicOp;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+/**
+ * Snapshot of a built circuit: the operations of its .arith file with the input, witness and
+ * output wires and their labels, saved to a compact binary file and evaluated natively, so a
+ * restarted service evaluates witnesses without running buildCircuit() again.
+ *
+ * The snapshot holds what the circuit file holds: the basic operations (add, mul, const-mul,
+ * assert, xor, or, zerop, split, pack). Witness computations written in Java inside gadgets
+ * (specifyProverWitnessComputation, e.g. InputPackingGadget or the field divisions of the
+ * Edwards curve gadgets) are not part of it, so for those circuits every prover witness value
+ * has to be given to evaluate(); the SHA-256 / Merkle path circuits have none.
+ *
+ * File layout (big endian): magic, numOfWires, field prime, one-wire id, inputs, witnesses and
+ * outputs as (count, ids, labels), then the operations as (opcode, inputs, outputs[, constant]).
+ *
+ * usage: CircuitSnapshot save circuit file.snap [--height h] [--batch b]
+ *        CircuitSnapshot eval file.snap jobs.jsonl [outDir]   (jobs as in BatchWitnessRunner)
+ */
+public class CircuitSnapshot {
+
+	private static final int MAGIC = 0x534e5031; // "SNP1"
+
+	static final int ADD = 0, MUL = 1, CONST_MUL = 2, ASSERT = 3, XOR = 4, OR = 5, ZEROP = 6, SPLIT = 7, PACK = 8;
+	private static final String[] OP_NAMES = { "add", "mul", "const-mul", "assert", "xor", "or", "zerop", "split", "pack" };
+
+	private final int numOfWires;
+	private final BigInteger fieldPrime;
+	private final int oneWireId;
+	private final int[] inputIds, witnessIds, outputIds;
+	private final String[] inputLabels, witnessLabels, outputLabels;
+
+	// operation i reads operands[operandOffsets[i] .. +numOfInputs[i]) and writes the following numOfOutputs[i]
+	private final int numOfOps;
+	private final byte[] opcodes;
+	private final int[] operandOffsets;
+	private final int[] numOfInputs;
+	private final int[] numOfOutputs;
+	private final int[] operands;
+	private final BigInteger[] constants; // per operation, const-mul only
+
+	CircuitSnapshot(int numOfWires, BigInteger fieldPrime, int oneWireId, int[] inputIds, String[] inputLabels,
+			int[] witnessIds, String[] witnessLabels, int[] outputIds, String[] outputLabels, int numOfOps,
+			byte[] opcodes, int[] operandOffsets, int[] numOfInputs, int[] numOfOutputs, int[] operands,
+			BigInteger[] constants) {
+		this.numOfWires = numOfWires;
+		this.fieldPrime = fieldPrime;
+		this.oneWireId = oneWireId;
+		this.inputIds = inputIds;
+		this.inputLabels = inputLabels;
+		this.witnessIds = witnessIds;
+		this.witnessLabels = witnessLabels;
+		this.outputIds = outputIds;
+		this.outputLabels = outputLabels;
+		this.numOfOps = numOfOps;
+		this.opcodes = opcodes;
+		this.operandOffsets = operandOffsets;
+		this.numOfInputs = numOfInputs;
+		this.numOfOutputs = numOfOutputs;
+		this.operands = operands;
+		this.constants = constants;
+	}
+
+	/** Snapshot of a generated circuit (writes its .arith file) **/
+	public static CircuitSnapshot capture(CircuitGenerator generator) throws IOException {
+		generator.writeCircuitFile();
+		return fromArith(new File(generator.getName() + ".arith"));
+	}
+
+	/** Parses a jsnark circuit file: "total n", "input id # label", "nizkinput ...", "output ...", operations **/
+	public static CircuitSnapshot fromArith(File arithFile) throws IOException {
+		Builder builder = new Builder();
+		BufferedReader reader = new BufferedReader(new FileReader(arithFile));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				parseArithLine(line, builder);
+			}
+		} finally {
+			reader.close();
+		}
+		return builder.build(Config.FIELD_PRIME);
+	}
+
+	/** Receives the content of a circuit file; the first input is the one-input wire, ids holds n inputs then m outputs **/
+	interface ArithHandler {
+		void total(int numOfWires);
+		void input(int id, String label);
+		void witness(int id, String label);
+		void output(int id, String label);
+		void op(int opcode, int n, int m, int[] ids, BigInteger constant);
+	}
+
+	/** One line of a circuit file, as written by writeCircuitFile() (Instruction.toString() of the circuit instructions) **/
+	static void parseArithLine(String line, ArithHandler handler) {
+		String label = "";
+		int comment = line.indexOf('#');
+		if (comment >= 0) {
+			label = line.substring(comment + 1).trim();
+			line = line.substring(0, comment);
+		}
+		String[] tokens = line.replace('<', ' ').replace('>', ' ').trim().split("\\s+");
+		if (tokens[0].isEmpty()) {
+			return;
+		}
+		String op = tokens[0];
+		if (op.equals("total")) {
+			handler.total(Integer.parseInt(tokens[1]));
+		} else if (op.equals("input")) {
+			handler.input(Integer.parseInt(tokens[1]), label);
+		} else if (op.equals("nizkinput")) {
+			handler.witness(Integer.parseInt(tokens[1]), label);
+		} else if (op.equals("output")) {
+			handler.output(Integer.parseInt(tokens[1]), label);
+		} else {
+			// op in n <ids> out m <ids>
+			int n = Integer.parseInt(tokens[2]);
+			int m = Integer.parseInt(tokens[4 + n]);
+			int[] ids = new int[n + m];
+			for (int i = 0; i < n; i++) { ids[i] = Integer.parseInt(tokens[3 + i]); }
+			for (int i = 0; i < m; i++) { ids[n + i] = Integer.parseInt(tokens[5 + n + i]); }
+			handleOp(op, n, m, ids, handler);
+		}
+	}
+
+	/**
+	 * One instruction of a generator's evaluation queue. Basic operations are passed on from
+	 * their wires, without formatting them as text; wire labels (input, nizkinput and output
+	 * lines, a few per circuit) still go through their line, which is the only access to the label.
+	 */
+	static void handleInstruction(Instruction instruction, ArithHandler handler) {
+		if (instruction instanceof BasicOp) {
+			BasicOp op = (BasicOp) instruction;
+			Wire[] inputs = op.getInputs();
+			Wire[] outputs = op.getOutputs();
+			int[] ids = new int[inputs.length + outputs.length];
+			for (int i = 0; i < inputs.length; i++) { ids[i] = inputs[i].getWireId(); }
+			for (int i = 0; i < outputs.length; i++) { ids[inputs.length + i] = outputs[i].getWireId(); }
+			handleOp(op.getOpcode(), inputs.length, outputs.length, ids, handler);
+		} else {
+			parseArithLine(instruction.toString(), handler);
+		}
+	}
+
+	/** op: the operation name of the circuit file, the constant of const-mul is part of it **/
+	private static void handleOp(String op, int n, int m, int[] ids, ArithHandler handler) {
+		BigInteger constant = null;
+		int opcode;
+		if (op.startsWith("const-mul-neg-")) {
+			opcode = CONST_MUL;
+			constant = Config.FIELD_PRIME.subtract(new BigInteger(op.substring(14), 16)).mod(Config.FIELD_PRIME);
+		} else if (op.startsWith("const-mul-")) {
+			opcode = CONST_MUL;
+			constant = new BigInteger(op.substring(10), 16);
+		} else {
+			opcode = opcode(op);
+		}
+		handler.op(opcode, n, m, ids, constant);
+	}
+
+	/** Collects the content of a circuit file into a snapshot **/
+	static final class Builder implements ArithHandler {
+		int numOfWires = -1;
+		int oneWireId = -1;
+		final IntList inputIds = new IntList(), witnessIds = new IntList(), outputIds = new IntList();
+		final List<String> inputLabels = new ArrayList<String>(), witnessLabels = new ArrayList<String>(),
+				outputLabels = new ArrayList<String>();
+		final IntList opcodes = new IntList(), operandOffsets = new IntList(), numOfInputs = new IntList(),
+				numOfOutputs = new IntList(), operands = new IntList();
+		final List<BigInteger> constants = new ArrayList<BigInteger>();
+
+		public void total(int numOfWires) {
+			this.numOfWires = numOfWires;
+		}
+
+		public void input(int id, String label) {
+			if (oneWireId < 0) {
+				oneWireId = id; // the one-input wire comes first
+			} else {
+				inputIds.add(id);
+				inputLabels.add(label);
+			}
+		}
+
+		public void witness(int id, String label) {
+			witnessIds.add(id);
+			witnessLabels.add(label);
+		}
+
+		public void output(int id, String label) {
+			outputIds.add(id);
+			outputLabels.add(label);
+		}
+
+		public void op(int opcode, int n, int m, int[] ids, BigInteger constant) {
+			opcodes.add(opcode);
+			operandOffsets.add(operands.size());
+			numOfInputs.add(n);
+			numOfOutputs.add(m);
+			for (int i = 0; i < n + m; i++) { operands.add(ids[i]); }
+			constants.add(constant);
+		}
+
+		CircuitSnapshot build(BigInteger fieldPrime) {
+			if (numOfWires < 0 || oneWireId < 0) {
+				throw new IllegalArgumentException("Not a circuit file: no total or no input wire");
+			}
+			int numOfOps = opcodes.size();
+			byte[] codes = new byte[numOfOps];
+			for (int i = 0; i < numOfOps; i++) { codes[i] = (byte) opcodes.get(i); }
+			return new CircuitSnapshot(numOfWires, fieldPrime, oneWireId, inputIds.toArray(), inputLabels.toArray(new String[0]),
+					witnessIds.toArray(), witnessLabels.toArray(new String[0]), outputIds.toArray(),
+					outputLabels.toArray(new String[0]), numOfOps, codes, operandOffsets.toArray(), numOfInputs.toArray(),
+					numOfOutputs.toArray(), operands.toArray(), constants.toArray(new BigInteger[0]));
+		}
+	}
+
+	static int opcode(String name) {
+		for (int i = 0; i < OP_NAMES.length; i++) {
+			if (OP_NAMES[i].equals(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown operation " + name);
+	}
+
+	public void save(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(numOfWires);
+			writeBytes(out, fieldPrime.toByteArray());
+			out.writeInt(oneWireId);
+			writeWires(out, inputIds, inputLabels);
+			writeWires(out, witnessIds, witnessLabels);
+			writeWires(out, outputIds, outputLabels);
+			out.writeInt(numOfOps);
+			out.writeInt(operands.length);
+			for (int i = 0; i < numOfOps; i++) {
+				out.writeByte(opcodes[i]);
+				out.writeInt(numOfInputs[i]);
+				out.writeInt(numOfOutputs[i]);
+				for (int j = 0; j < numOfInputs[i] + numOfOutputs[i]; j++) {
+					out.writeInt(operands[operandOffsets[i] + j]);
+				}
+				if (opcodes[i] == CONST_MUL) {
+					writeBytes(out, constants[i].toByteArray());
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public static CircuitSnapshot load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a circuit snapshot: " + file);
+			}
+			int numOfWires = in.readInt();
+			BigInteger fieldPrime = new BigInteger(readBytes(in));
+			int oneWireId = in.readInt();
+			int[] inputIds = readIds(in);
+			String[] inputLabels = readLabels(in, inputIds.length);
+			int[] witnessIds = readIds(in);
+			String[] witnessLabels = readLabels(in, witnessIds.length);
+			int[] outputIds = readIds(in);
+			String[] outputLabels = readLabels(in, outputIds.length);
+			int numOfOps = in.readInt();
+			byte[] opcodes = new byte[numOfOps];
+			int[] operandOffsets = new int[numOfOps];
+			int[] numOfInputs = new int[numOfOps];
+			int[] numOfOutputs = new int[numOfOps];
+			int[] operands = new int[in.readInt()];
+			BigInteger[] constants = new BigInteger[numOfOps];
+			int offset = 0;
+			for (int i = 0; i < numOfOps; i++) {
+				opcodes[i] = in.readByte();
+				numOfInputs[i] = in.readInt();
+				numOfOutputs[i] = in.readInt();
+				operandOffsets[i] = offset;
+				for (int j = 0; j < numOfInputs[i] + numOfOutputs[i]; j++) {
+					operands[offset++] = in.readInt();
+				}
+				if (opcodes[i] == CONST_MUL) {
+					constants[i] = new BigInteger(readBytes(in));
+				}
+			}
+			return new CircuitSnapshot(numOfWires, fieldPrime, oneWireId, inputIds, inputLabels, witnessIds, witnessLabels,
+					outputIds, outputLabels, numOfOps, opcodes, operandOffsets, numOfInputs, numOfOutputs, operands, constants);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Evaluates the circuit: values of the input and prover witness wires in circuit order
+	 * (missing trailing values must not be needed), returns the value of every wire.
+	 * Throws IllegalStateException if an assertion of the circuit does not hold.
+	 */
+	public BigInteger[] evaluate(BigInteger[] inputs, BigInteger[] witness) {
+		if (inputs.length > inputIds.length || witness.length > witnessIds.length) {
+			throw new IllegalArgumentException("Too many values: " + inputs.length + " inputs, " + witness.length
+					+ " witness values for " + inputIds.length + " input and " + witnessIds.length + " witness wires");
+		}
+		BigInteger[] values = new BigInteger[numOfWires];
+		values[oneWireId] = BigInteger.ONE;
+		for (int i = 0; i < inputs.length; i++) { values[inputIds[i]] = inputs[i].mod(fieldPrime); }
+		for (int i = 0; i < witness.length; i++) { values[witnessIds[i]] = witness[i].mod(fieldPrime); }
+		for (int i = 0; i < numOfOps; i++) {
+			evaluateOp(i, values);
+		}
+		return values;
+	}
+
+	private void evaluateOp(int op, BigInteger[] values) {
+		int offset = operandOffsets[op];
+		int n = numOfInputs[op];
+		switch (opcodes[op]) {
+		case ADD: {
+			BigInteger sum = BigInteger.ZERO;
+			for (int j = 0; j < n; j++) { sum = sum.add(value(values, offset + j)); }
+			values[operands[offset + n]] = sum.mod(fieldPrime);
+			break;
+		}
+		case MUL:
+			values[operands[offset + 2]] = value(values, offset).multiply(value(values, offset + 1)).mod(fieldPrime);
+			break;
+		case CONST_MUL:
+			values[operands[offset + 1]] = value(values, offset).multiply(constants[op]).mod(fieldPrime);
+			break;
+		case ASSERT:
+			if (!value(values, offset).multiply(value(values, offset + 1)).mod(fieldPrime).equals(value(values, offset + 2))) {
+				throw new IllegalStateException("Assertion failed on wire " + operands[offset + 2] + " (operation " + op + ")");
+			}
+			break;
+		case XOR:
+			values[operands[offset + 2]] = value(values, offset).xor(value(values, offset + 1));
+			break;
+		case OR:
+			values[operands[offset + 2]] = value(values, offset).or(value(values, offset + 1));
+			break;
+		case ZEROP:
+			values[operands[offset + 1]] = BigInteger.ZERO; // auxiliary wire, computed by the prover
+			values[operands[offset + 2]] = value(values, offset).signum() == 0 ? BigInteger.ZERO : BigInteger.ONE;
+			break;
+		case SPLIT: {
+			BigInteger x = value(values, offset);
+			int m = numOfOutputs[op];
+			if (x.bitLength() > m) {
+				throw new IllegalStateException("Value of wire " + operands[offset] + " does not fit in " + m + " bits");
+			}
+			for (int j = 0; j < m; j++) {
+				values[operands[offset + 1 + j]] = x.testBit(j) ? BigInteger.ONE : BigInteger.ZERO;
+			}
+			break;
+		}
+		case PACK: {
+			BigInteger sum = BigInteger.ZERO;
+			for (int j = n - 1; j >= 0; j--) { sum = sum.shiftLeft(1).add(value(values, offset + j)); }
+			values[operands[offset + n]] = sum.mod(fieldPrime);
+			break;
+		}
+		default:
+			throw new IllegalStateException("Unknown opcode " + opcodes[op]);
+		}
+	}
+
+	private BigInteger value(BigInteger[] values, int operand) {
+		BigInteger value = values[operands[operand]];
+		if (value == null) {
+			throw new IllegalStateException("Wire " + operands[operand] + " has no value (missing input or witness)");
+		}
+		return value;
+	}
+
+	/** .in file of an evaluation, in the format of CircuitEvaluator.writeInputFile() **/
+	public void writeInputFile(BigInteger[] values, File file) throws IOException {
+		PrintWriter writer = new PrintWriter(file);
+		try {
+			writer.println(oneWireId + " " + values[oneWireId].toString(16));
+			for (int id : inputIds) { writer.println(id + " " + values[id].toString(16)); }
+			for (int id : witnessIds) { writer.println(id + " " + values[id].toString(16)); }
+		} finally {
+			writer.close();
+		}
+	}
+
+	public int getNumWires() { return numOfWires; }
+	public int getNumOfOps() { return numOfOps; }
+	public int[] getInputIds() { return inputIds.clone(); }
+	public int[] getWitnessIds() { return witnessIds.clone(); }
+	public int[] getOutputIds() { return outputIds.clone(); }
+	public String[] getInputLabels() { return inputLabels.clone(); }
+	public String[] getWitnessLabels() { return witnessLabels.clone(); }
+	public String[] getOutputLabels() { return outputLabels.clone(); }
+
+	int getOneWireId() { return oneWireId; }
+	BigInteger getFieldPrime() { return fieldPrime; }
+	byte getOpcode(int op) { return opcodes[op]; }
+	int getNumOfInputs(int op) { return numOfInputs[op]; }
+	int getNumOfOutputs(int op) { return numOfOutputs[op]; }
+	int getOperand(int op, int j) { return operands[operandOffsets[op] + j]; }
+	BigInteger getConstant(int op) { return constants[op]; }
+
+	private static void writeWires(DataOutputStream out, int[] ids, String[] labels) throws IOException {
+		out.writeInt(ids.length);
+		for (int id : ids) { out.writeInt(id); }
+		for (String label : labels) { out.writeUTF(label); }
+	}
+
+	private static int[] readIds(DataInputStream in) throws IOException {
+		int[] ids = new int[in.readInt()];
+		for (int i = 0; i < ids.length; i++) { ids[i] = in.readInt(); }
+		return ids;
+	}
+
+	private static String[] readLabels(DataInputStream in, int n) throws IOException {
+		String[] labels = new String[n];
+		for (int i = 0; i < n; i++) { labels[i] = in.readUTF(); }
+		return labels;
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readUnsignedShort()];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/** growable int array, the operand list of a large circuit does not fit in boxed Integers **/
+	static final class IntList {
+		private int[] values = new int[1024];
+		private int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			values[size++] = value;
+		}
+
+		int get(int i) { return values[i]; }
+		int size() { return size; }
+		int[] toArray() { return Arrays.copyOf(values, size); }
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args[0].equals("save")) {
+			int treeHeight = 4;
+			int batchSize = 4;
+			for (int i = 3; i < args.length; i++) {
+				if (args[i].equals("--height")) { treeHeight = Integer.parseInt(args[++i]); }
+				else if (args[i].equals("--batch")) { batchSize = Integer.parseInt(args[++i]); }
+				else { throw new IllegalArgumentException("Unknown option " + args[i]); }
+			}
+			long start = System.nanoTime();
+			CircuitGenerator generator = CircuitBenchmark.create(args[1], treeHeight, batchSize);
+			generator.generateCircuit();
+			CircuitSnapshot snapshot = capture(generator);
+			snapshot.save(new File(args[2]));
+			System.out.println("built and saved " + snapshot.getNumOfOps() + " operations in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+		} else if (args[0].equals("eval")) {
+			long start = System.nanoTime();
+			CircuitSnapshot snapshot = load(new File(args[1]));
+			System.out.println("loaded " + snapshot.getNumOfOps() + " operations in " + (System.nanoTime() - start) / 1000000 + " ms");
+			File outputDirectory = new File(args.length > 3 ? args[3] : ".");
+			outputDirectory.mkdirs();
+			BufferedReader reader = new BufferedReader(new FileReader(args[2]));
+			try {
+				String line;
+				int lineNumber = 0;
+				while ((line = reader.readLine()) != null) {
+					lineNumber++;
+					if (line.trim().isEmpty()) {
+						continue;
+					}
+					Map<String, Object> job = BatchWitnessRunner.parseJob(line);
+					String id = BatchWitnessRunner.jobId(job, lineNumber);
+					BigInteger[] values = snapshot.evaluate(BatchWitnessRunner.values(job, "inputs"),
+							BatchWitnessRunner.values(job, "witness"));
+					snapshot.writeInputFile(values, new File(outputDirectory, id + ".in"));
+					StringBuilder outputs = new StringBuilder();
+					for (int outputId : snapshot.outputIds) { outputs.append(' ').append(values[outputId].toString(16)); }
+					System.out.println(id + ":" + outputs);
+				}
+			} finally {
+				reader.close();
+			}
+		} else {
+			throw new IllegalArgumentException("usage: CircuitSnapshot save circuit file | eval file jobs.jsonl [outDir]");
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+package projects;
+
+import circuit.operations.Gadget;
+
+/**
+ * Scope events of the circuit construction: the gadgets of projects.* call enter() and exit()
+ * around their construction (exit() in a finally block, so that a failing gadget does not
+ * leave its scope open), as do a few hot spots inside them (SHA-256 instances, the bit
+ * repacking before a SHA-256 compression, the Merkle mux, root comparisons).
+ *
+ * The events go to the listener registered on the current thread, and are no-ops without one.
+ * There is one listener per thread: CircuitProfiler counts the evaluation queue that
+ * StreamingCircuitWriter empties, so the two cannot observe the same build.
+ */
+public final class GadgetScopes {
+
+	public interface Listener {
+		void enter(String name);
+		void exit();
+	}
+
+	private static final ThreadLocal<Listener> LISTENER = new ThreadLocal<Listener>();
+
+	private GadgetScopes() {
+	}
+
+	public static void enter(Gadget gadget, String description) {
+		Listener listener = LISTENER.get();
+		if (listener != null) {
+			String name = gadget.getClass().getSimpleName();
+			listener.enter(description == null || description.isEmpty() ? name : name + "[" + description + "]");
+		}
+	}
+
+	public static void enter(String name) {
+		Listener listener = LISTENER.get();
+		if (listener != null) {
+			listener.enter(name);
+		}
+	}
+
+	public static void exit() {
+		Listener listener = LISTENER.get();
+		if (listener != null) {
+			listener.exit();
+		}
+	}
+
+	/** Receive the events of the current thread; fails if another listener is registered on it **/
+	public static void register(Listener listener) {
+		Listener current = LISTENER.get();
+		if (current != null) {
+			throw new IllegalStateException(current.getClass().getSimpleName() + " is already attached to this thread");
+		}
+		LISTENER.set(listener);
+	}
+
+	/** No-op if the listener is not the one registered on the current thread **/
+	public static void unregister(Listener listener) {
+		if (LISTENER.get() == listener) {
+			LISTENER.remove();
+		}
+	}
+
+}
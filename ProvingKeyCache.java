@@ -0,0 +1,277 @@
+package projects;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import circuit.structure.CircuitGenerator;
+
+/**
+ * On-disk cache of proving / verification keys, addressed by the SHA-256 of the setup command
+ * and the .arith file (keys of another backend or curve are never a hit), so that the trusted setup of a circuit runs once and every later proof is prove-only.
+ *
+ * The jsnark interface of runLibsnark() (run_ppzksnark) runs setup, proving and verification
+ * in one process and does not export its keys, so the cache drives two external commands
+ * instead, given as templates with the placeholders {arith}, {in}, {pk}, {vk} and {proof}:
+ *
+ *   setup: generates {pk} and {vk} for {arith}       (run on a cache miss only)
+ *   prove: proves {arith} / {in} with {pk} into {proof}
+ *
+ * An entry is a directory <digest>/ holding proving.key and verification.key; it is built in
+ * a temporary directory and renamed into place, so concurrent processes never see half an
+ * entry. The modification time of an entry is its last use: evict() drops entries older
+ * than maxAge, then the least recently used ones until the cache fits in maxBytes.
+ * Several processes may share a cache directory: prove() hard-links (or copies) the keys into
+ * a private directory before running the prover, so an entry evicted meanwhile by another
+ * process stays readable; an entry that is gone before it is linked counts as a miss.
+ *
+ * usage: ProvingKeyCache circuit --cache dir --setup-cmd "..." --prove-cmd "..."
+ *                        [--height h] [--batch b] [--max-mb 4096] [--max-age-days 30]
+ *        (circuit names as in CircuitBenchmark; the proof is written to <circuit name>.proof)
+ */
+public class ProvingKeyCache {
+
+	public static final String PROVING_KEY = "proving.key";
+	public static final String VERIFICATION_KEY = "verification.key";
+
+	private final File directory;
+	private final long maxBytes;
+	private final long maxAgeMillis;
+	private final String setupCommand;
+	private final String proveCommand;
+
+	public ProvingKeyCache(File directory, long maxBytes, long maxAgeMillis, String setupCommand, String proveCommand) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.maxAgeMillis = maxAgeMillis;
+		this.setupCommand = setupCommand;
+		this.proveCommand = proveCommand;
+		directory.mkdirs();
+	}
+
+	/** hex SHA-256 of the setup command and the circuit file: the name of the entry **/
+	public static String circuitDigest(File arithFile, String setupCommand) throws IOException {
+		MessageDigest sha256;
+		try {
+			sha256 = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		sha256.update((setupCommand == null ? "" : setupCommand.trim()).getBytes(StandardCharsets.UTF_8));
+		sha256.update((byte) 0);
+		InputStream in = new FileInputStream(arithFile);
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				sha256.update(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return String.format("%064x", new BigInteger(1, sha256.digest()));
+	}
+
+	/** Entry of the circuit, null on a miss; a hit counts as a use **/
+	public File lookup(String digest) {
+		File entry = new File(directory, digest);
+		if (!new File(entry, PROVING_KEY).isFile() || !new File(entry, VERIFICATION_KEY).isFile()) {
+			return null;
+		}
+		entry.setLastModified(System.currentTimeMillis());
+		return entry;
+	}
+
+	/** Entry of the circuit, running the setup on a miss (another process may evict it, see prove()) **/
+	public File getOrSetup(File arithFile) throws IOException, InterruptedException {
+		String digest = circuitDigest(arithFile, setupCommand);
+		File entry = lookup(digest);
+		return entry != null ? entry : setup(arithFile, digest);
+	}
+
+	/** Runs the setup into a new entry, then evicts other entries if needed **/
+	private File setup(File arithFile, String digest) throws IOException, InterruptedException {
+		File entry = new File(directory, digest);
+		File temp = Files.createTempDirectory(directory.toPath(), digest + ".tmp").toFile();
+		try {
+			run(setupCommand, arithFile, null, new File(temp, PROVING_KEY), new File(temp, VERIFICATION_KEY), null);
+			try {
+				Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				if (lookup(digest) == null) { // not a concurrent setup of the same circuit
+					throw e;
+				}
+			}
+		} finally {
+			delete(temp);
+		}
+		evict(digest);
+		return entry;
+	}
+
+	/** Proves the assignment, with the cached proving key if there is one; true on a cache hit **/
+	public boolean prove(File arithFile, File inFile, File proofFile) throws IOException, InterruptedException {
+		String digest = circuitDigest(arithFile, setupCommand);
+		File keys = Files.createTempDirectory(directory.toPath(), digest + ".tmp").toFile(); // skipped by evict()
+		try {
+			boolean hit = pin(lookup(digest), keys);
+			if (!hit && !pin(setup(arithFile, digest), keys)) {
+				throw new IOException("Entry " + digest + " was evicted right after its setup, cache too small?");
+			}
+			run(proveCommand, arithFile, inFile, new File(keys, PROVING_KEY), new File(keys, VERIFICATION_KEY), proofFile);
+			return hit;
+		} finally {
+			delete(keys);
+		}
+	}
+
+	/** Links (or copies) the keys of an entry into dir; false if there is no entry or it was evicted meanwhile **/
+	private static boolean pin(File entry, File dir) throws IOException {
+		if (entry == null) {
+			return false;
+		}
+		for (String key : new String[] { PROVING_KEY, VERIFICATION_KEY }) {
+			Path source = new File(entry, key).toPath();
+			Path target = new File(dir, key).toPath();
+			try {
+				try {
+					Files.createLink(target, source);
+				} catch (NoSuchFileException e) {
+					throw e;
+				} catch (UnsupportedOperationException | IOException e) { // no hard links on this file system
+					Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} catch (NoSuchFileException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Drops entries unused for maxAge, then the least recently used ones above maxBytes **/
+	public void evict() {
+		evict(null);
+	}
+
+	/** as evict(), but never drops the entry of keepDigest (the one just set up, even if it alone exceeds maxBytes) **/
+	private synchronized void evict(String keepDigest) {
+		File[] entries = directory.listFiles();
+		if (entries == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		List<File> kept = new ArrayList<File>();
+		for (File entry : entries) {
+			if (!entry.isDirectory() || entry.getName().contains(".tmp") || entry.getName().equals(keepDigest)) {
+				continue;
+			}
+			if (now - entry.lastModified() > maxAgeMillis) {
+				delete(entry);
+			} else {
+				kept.add(entry);
+			}
+		}
+		kept.sort(new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Long.compare(b.lastModified(), a.lastModified()); // most recent first
+			}
+		});
+		long total = keepDigest == null ? 0 : size(new File(directory, keepDigest));
+		for (File entry : kept) {
+			total += size(entry);
+			if (total > maxBytes) {
+				delete(entry);
+			}
+		}
+	}
+
+	private static void run(String template, File arith, File in, File pk, File vk, File proof)
+			throws IOException, InterruptedException {
+		if (template == null) {
+			throw new IllegalStateException("No command configured for this step");
+		}
+		List<String> command = new ArrayList<String>();
+		for (String token : template.trim().split("\\s+")) {
+			token = token.replace("{arith}", arith.getPath()).replace("{pk}", pk.getPath()).replace("{vk}", vk.getPath());
+			if (in != null) { token = token.replace("{in}", in.getPath()); }
+			if (proof != null) { token = token.replace("{proof}", proof.getPath()); }
+			command.add(token);
+		}
+		Process process = new ProcessBuilder(command).inheritIO().start();
+		int status = process.waitFor();
+		if (status != 0) {
+			throw new IOException("Command failed with status " + status + ": " + command);
+		}
+	}
+
+	private static long size(File file) {
+		if (file.isFile()) {
+			return file.length();
+		}
+		long total = 0;
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) { total += size(child); }
+		}
+		return total;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) { delete(child); }
+		}
+		file.delete();
+	}
+
+	public static void main(String[] args) throws Exception {
+		String circuit = args[0];
+		int treeHeight = 4;
+		int batchSize = 4;
+		String cacheDirectory = null;
+		String setupCommand = null;
+		String proveCommand = null;
+		long maxBytes = 4096L << 20;
+		long maxAgeMillis = 30L * 24 * 3600 * 1000;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("--height")) { treeHeight = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--batch")) { batchSize = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--cache")) { cacheDirectory = args[++i]; }
+			else if (args[i].equals("--setup-cmd")) { setupCommand = args[++i]; }
+			else if (args[i].equals("--prove-cmd")) { proveCommand = args[++i]; }
+			else if (args[i].equals("--max-mb")) { maxBytes = Long.parseLong(args[++i]) << 20; }
+			else if (args[i].equals("--max-age-days")) { maxAgeMillis = Long.parseLong(args[++i]) * 24 * 3600 * 1000; }
+			else { throw new IllegalArgumentException("Unknown option " + args[i]); }
+		}
+		if (cacheDirectory == null || setupCommand == null || proveCommand == null) {
+			throw new IllegalArgumentException("--cache, --setup-cmd and --prove-cmd are required, got "
+					+ Arrays.toString(args));
+		}
+
+		CircuitGenerator generator = CircuitBenchmark.create(circuit, treeHeight, batchSize);
+		generator.generateCircuit();
+		generator.evalCircuit();
+		generator.prepFiles();
+
+		ProvingKeyCache cache = new ProvingKeyCache(new File(cacheDirectory), maxBytes, maxAgeMillis, setupCommand, proveCommand);
+		long start = System.nanoTime();
+		boolean hit = cache.prove(new File(generator.getName() + ".arith"), new File(generator.getName() + ".in"),
+				new File(generator.getName() + ".proof"));
+		System.out.println((hit ? "cache hit" : "cache miss, setup done") + ", proof in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+}
@@ -0,0 +1,166 @@
+package projects;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+import circuit.eval.Instruction;
+import circuit.structure.CircuitGenerator;
+
+/**
+ * Streaming build mode: the circuit file is written while the circuit is built, and the
+ * written instructions leave the generator's evaluation queue.
+ *
+ * Every gadget of projects.* (and every SHA-256 instance, see GadgetScopes) signals its end;
+ * at that point all instructions of the queue are final, so they are written out in queue
+ * order and removed. What stays on the heap is what the generator and the gadgets still
+ * reference, the boundary wires, so the peak heap follows the width of the circuit rather
+ * than its size. A Merkle path spills after every level.
+ *
+ * Consequences of removing instructions from the queue:
+ * - jsnark no longer finds duplicates of spilled operations, so an operation repeated across
+ *   two gadgets is emitted twice (same value, one more constraint);
+ * - evalCircuit() / prepFiles() cannot run on the generator afterwards: the witness is
+ *   evaluated from the file with CircuitSnapshot (BinaryCircuitFormat.Reader.toSnapshot()),
+ *   and Java witness computations of gadgets are dropped (counted in getDroppedInstructions()),
+ *   so circuits using them need all prover witness values, as for CircuitSnapshot;
+ * - CircuitProfiler cannot be attached at the same time (attach() fails).
+ *
+ * The output is a BinaryCircuitFormat file, or a text .arith file whose "total" line is
+ * padded and rewritten at the end.
+ *
+ * usage: StreamingCircuitWriter circuit out.barith|out.arith [--height h] [--batch b]
+ *        (circuit names as in CircuitBenchmark)
+ */
+public class StreamingCircuitWriter implements GadgetScopes.Listener {
+
+	private final CircuitGenerator generator;
+	private final File file;
+	private final BinaryCircuitFormat.Writer binaryWriter;
+	private final Writer textWriter;
+
+	private long spilledInstructions;
+	private long droppedInstructions;
+	private int peakQueueSize;
+	private long peakHeapBytes;
+
+	private StreamingCircuitWriter(CircuitGenerator generator, File file) throws IOException {
+		this.generator = generator;
+		this.file = file;
+		if (file.getName().endsWith(".arith")) {
+			binaryWriter = null;
+			textWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII), 1 << 16);
+			textWriter.write(totalLine(0));
+		} else {
+			binaryWriter = new BinaryCircuitFormat.Writer(file);
+			textWriter = null;
+		}
+	}
+
+	/**
+	 * Spill the circuit of this generator into the file while it is built: call before generateCircuit(), on the
+	 * same thread. Fails if a CircuitProfiler (or another writer) is attached to the thread.
+	 */
+	public static StreamingCircuitWriter attach(CircuitGenerator generator, File file) throws IOException {
+		StreamingCircuitWriter writer = new StreamingCircuitWriter(generator, file);
+		try {
+			GadgetScopes.register(writer);
+		} catch (IllegalStateException e) {
+			if (writer.textWriter != null) { writer.textWriter.close(); } else { writer.binaryWriter.close(); }
+			file.delete();
+			throw e;
+		}
+		return writer;
+	}
+
+	public void enter(String name) {
+	}
+
+	/** the scope's instructions are final **/
+	public void exit() {
+		spill();
+	}
+
+	/** Writes and removes every instruction of the evaluation queue **/
+	public void spill() {
+		Map<Instruction, Instruction> queue = generator.getEvaluationQueue();
+		peakQueueSize = Math.max(peakQueueSize, queue.size());
+		Runtime runtime = Runtime.getRuntime();
+		peakHeapBytes = Math.max(peakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+		try {
+			for (Iterator<Instruction> it = queue.keySet().iterator(); it.hasNext();) {
+				Instruction instruction = it.next();
+				if (instruction.doneWithinCircuit()) {
+					if (textWriter != null) {
+						textWriter.write(instruction.toString());
+						textWriter.write('\n');
+					} else {
+						CircuitSnapshot.handleInstruction(instruction, binaryWriter);
+					}
+					spilledInstructions++;
+				} else {
+					droppedInstructions++;
+				}
+				it.remove();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Call after generateCircuit(): spills the rest, completes the file and detaches the writer **/
+	public void finish() throws IOException {
+		spill();
+		GadgetScopes.unregister(this);
+		if (textWriter != null) {
+			textWriter.close();
+			RandomAccessFile header = new RandomAccessFile(file, "rw");
+			try {
+				header.write(totalLine(generator.getNumWires()).getBytes(StandardCharsets.US_ASCII));
+			} finally {
+				header.close();
+			}
+		} else {
+			binaryWriter.total(generator.getNumWires());
+			binaryWriter.close();
+		}
+	}
+
+	/** fixed width, so that the final line overwrites the placeholder **/
+	private static String totalLine(int numOfWires) {
+		return String.format("total %-12d\n", numOfWires);
+	}
+
+	public long getSpilledInstructions() { return spilledInstructions; }
+	public long getDroppedInstructions() { return droppedInstructions; }
+	public int getPeakQueueSize() { return peakQueueSize; }
+	public long getPeakHeapBytes() { return peakHeapBytes; }
+
+	public static void main(String[] args) throws Exception {
+		int treeHeight = 4;
+		int batchSize = 4;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("--height")) { treeHeight = Integer.parseInt(args[++i]); }
+			else if (args[i].equals("--batch")) { batchSize = Integer.parseInt(args[++i]); }
+			else { throw new IllegalArgumentException("Unknown option " + args[i]); }
+		}
+		long start = System.nanoTime();
+		CircuitGenerator generator = CircuitBenchmark.create(args[0], treeHeight, batchSize);
+		StreamingCircuitWriter writer = attach(generator, new File(args[1]));
+		generator.generateCircuit();
+		writer.finish();
+		System.out.println(String.format("%d instructions written (%d witness computations dropped) in %d ms, "
+				+ "peak queue %d instructions, peak heap %.1f MB", writer.getSpilledInstructions(),
+				writer.getDroppedInstructions(), (System.nanoTime() - start) / 1000000, writer.getPeakQueueSize(),
+				writer.getPeakHeapBytes() / 1048576.0));
+	}
+
+}
@@ -0,0 +1,69 @@
+package projects.elgamal;
+
+import java.math.BigInteger;
+
+import circuit.config.Config;
+
+/**
+ * Baby Jubjub, the twisted Edwards curve a*x^2 + y^2 = 1 + d*x^2*y^2 embedded in the
+ * BN254 scalar field (a = 168700, d = 168696), and a native reference implementation
+ * of its group law for witness generation. Points are {x, y}, the identity is {0, 1}.
+ */
+public final class BabyJubjub {
+
+	public static final BigInteger A = new BigInteger("168700");
+	public static final BigInteger D = new BigInteger("168696");
+
+	/** generator of the prime order subgroup **/
+	public static final BigInteger[] BASE = {
+			new BigInteger("5299619240641551281634865583518297030282874472190772894086521144482721001553"),
+			new BigInteger("16950150798460657717958625567821834550301663161624707787222815936182638968203") };
+
+	/** order of the subgroup generated by BASE (251 bits) **/
+	public static final BigInteger ORDER = new BigInteger(
+			"2736030358979909402780800718157159386076813972158567259200215660948447373041");
+	public static final int SCALAR_BIT_WIDTH = ORDER.bitLength();
+
+	public static final BigInteger[] IDENTITY = { BigInteger.ZERO, BigInteger.ONE };
+
+	private BabyJubjub() {
+	}
+
+	public static BigInteger[] add(BigInteger[] p1, BigInteger[] p2) {
+		BigInteger prime = Config.FIELD_PRIME;
+		BigInteger x1x2 = p1[0].multiply(p2[0]).mod(prime);
+		BigInteger y1y2 = p1[1].multiply(p2[1]).mod(prime);
+		BigInteger tau = D.multiply(x1x2).multiply(y1y2).mod(prime);
+		BigInteger x3 = p1[0].multiply(p2[1]).add(p1[1].multiply(p2[0]))
+				.multiply(BigInteger.ONE.add(tau).modInverse(prime)).mod(prime);
+		BigInteger y3 = y1y2.subtract(A.multiply(x1x2))
+				.multiply(BigInteger.ONE.subtract(tau).mod(prime).modInverse(prime)).mod(prime);
+		return new BigInteger[] { x3, y3 };
+	}
+
+	public static BigInteger[] negate(BigInteger[] p) {
+		return new BigInteger[] { p[0].negate().mod(Config.FIELD_PRIME), p[1] };
+	}
+
+	public static BigInteger[] scalarMul(BigInteger[] p, BigInteger k) {
+		BigInteger[] result = IDENTITY;
+		BigInteger[] doubled = p;
+		for (int i = 0; i < k.bitLength(); i++) {
+			if (k.testBit(i)) {
+				result = add(result, doubled);
+			}
+			doubled = add(doubled, doubled);
+		}
+		return result;
+	}
+
+	public static boolean isOnCurve(BigInteger[] p) {
+		BigInteger prime = Config.FIELD_PRIME;
+		BigInteger x2 = p[0].multiply(p[0]).mod(prime);
+		BigInteger y2 = p[1].multiply(p[1]).mod(prime);
+		BigInteger lhs = A.multiply(x2).add(y2).mod(prime);
+		BigInteger rhs = BigInteger.ONE.add(D.multiply(x2).multiply(y2)).mod(prime);
+		return lhs.equals(rhs);
+	}
+
+}
@@ -0,0 +1,65 @@
+package projects.elgamal;
+
+import circuit.structure.Wire;
+
+import circuit.operations.Gadget;
+
+import projects.GadgetScopes;
+
+/**
+ * Asserts that a point given as wires is on Baby Jubjub and, optionally, in the prime order
+ * subgroup generated by BASE (ORDER * P = identity).
+ * 
+ * On the curve the addition formulas are complete (d is not a square), so the denominators
+ * 1 +- d*x1*x2*y1*y2 of TwistedEdwardsAddGadget never vanish; off the curve they can be 0, and
+ * FieldDivisionGadget leaves 0/0 unconstrained. The subgroup check rules out the small order
+ * components (cofactor 8) that would let a prover shift a result by a low order point.
+ * 
+ * 3 constraints for the curve equation, about 3000 more for ORDER * P (a scalar multiplication by
+ * a constant: the bit multiplexers are free, the 250 doublings and additions are not).
+ */
+public class BabyJubjubPointGadget extends Gadget {
+
+	private Wire[] point;
+	private boolean checkSubgroup;
+
+	public BabyJubjubPointGadget(Wire[] point, boolean checkSubgroup, String... desc) {
+		super(desc);
+
+		this.point = point;
+		this.checkSubgroup = checkSubgroup;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		// a*x^2 + y^2 = 1 + d*x^2*y^2
+		Wire x2 = point[0].mul(point[0]);
+		Wire y2 = point[1].mul(point[1]);
+		generator.addEqualityAssertion(x2.mul(BabyJubjub.A).add(y2), x2.mul(y2).mul(BabyJubjub.D).add(1));
+
+		if (!checkSubgroup) {
+			return;
+		}
+
+		// ORDER * P = (0, 1)
+		Wire[] orderBits = new Wire[BabyJubjub.SCALAR_BIT_WIDTH];
+		for (int i = 0; i < orderBits.length; i++) {
+			orderBits[i] = BabyJubjub.ORDER.testBit(i) ? generator.getOneWire() : generator.getZeroWire();
+		}
+		Wire[] orderP = new VariableBaseScalarMulGadget(point, orderBits).getOutputWires();
+		generator.addZeroAssertion(orderP[0]);
+		generator.addOneAssertion(orderP[1]);
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return point;
+	}
+
+}
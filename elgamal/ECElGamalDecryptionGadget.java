@@ -0,0 +1,61 @@
+package projects.elgamal;
+
+import java.math.BigInteger;
+
+import circuit.structure.Wire;
+
+import circuit.operations.Gadget;
+
+import projects.GadgetScopes;
+
+/**
+ * ElGamal decryption on Baby Jubjub: M = c2 - x*c1, returned as the point M = m*B.
+ * c1 is checked to be in the prime order subgroup and c2 to be on the curve (BabyJubjubPointGadget).
+ */
+public class ECElGamalDecryptionGadget extends Gadget {
+
+	private Wire[] c1; // r*B
+	private Wire[] c2; // M + r*Y
+	private Wire x; // sk
+
+	private Wire[] plaintext;
+
+	public ECElGamalDecryptionGadget(Wire[] c1, Wire[] c2, Wire x, String... desc) {
+		super(desc);
+
+		this.c1 = c1;
+		this.c2 = c2;
+		this.x = x;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		// 0. c1 must be a point of the prime order subgroup, c2 a curve point (for the final addition)
+		new BabyJubjubPointGadget(c1, true);
+		new BabyJubjubPointGadget(c2, false);
+
+		// 1. x*c1
+		Wire[] xBitArray = x.getBitWires(BabyJubjub.SCALAR_BIT_WIDTH).asArray();
+		Wire[] xC1 = new VariableBaseScalarMulGadget(c1, xBitArray).getOutputWires();
+
+		// 2. c2 + (-x*c1), -(x, y) = (-x, y)
+		plaintext = new TwistedEdwardsAddGadget(c2, new Wire[] { xC1[0].negate(), xC1[1] }).getOutputWires();
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return plaintext;
+	}
+
+	/** Native reference **/
+	public static BigInteger[] decrypt(BigInteger[] c1, BigInteger[] c2, BigInteger x) {
+		return BabyJubjub.add(c2, BabyJubjub.negate(BabyJubjub.scalarMul(c1, x)));
+	}
+
+}
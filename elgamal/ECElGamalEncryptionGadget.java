@@ -0,0 +1,83 @@
+package projects.elgamal;
+
+import java.math.BigInteger;
+
+import circuit.structure.Wire;
+
+import circuit.operations.Gadget;
+
+import projects.GadgetScopes;
+
+/**
+ * ElGamal encryption on Baby Jubjub:
+ * 
+ *   M = m*B, c1 = r*B, c2 = M + r*Y    (B: subgroup generator, Y = x*B: public key)
+ * 
+ * m*B and r*B are fixed-base scalar multiplications, r*Y is variable-base.
+ * Y is checked to be in the prime order subgroup (BabyJubjubPointGadget).
+ */
+public class ECElGamalEncryptionGadget extends Gadget {
+
+	private static final int WINDOW_SIZE = 3; // fixed-base window
+
+	private Wire m; // plain text (messageBitWidth bits)
+	private Wire[] Y; // pk = x*B
+	private Wire r; // randomness in [0, ORDER) (prover witness)
+	private int messageBitWidth;
+
+	private Wire[] messagePoint;
+	private Wire[] c1;
+	private Wire[] c2;
+
+	public ECElGamalEncryptionGadget(Wire m, Wire[] Y, Wire r, int messageBitWidth, String... desc) {
+		super(desc);
+
+		this.m = m;
+		this.Y = Y;
+		this.r = r;
+		this.messageBitWidth = messageBitWidth;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		// 0. Y must be a point of the prime order subgroup
+		new BabyJubjubPointGadget(Y, true);
+
+		// 1. M = m*B
+		Wire[] mBitArray = m.getBitWires(messageBitWidth).asArray();
+		messagePoint = new FixedBaseScalarMulGadget(BabyJubjub.BASE, mBitArray, WINDOW_SIZE).getOutputWires();
+
+		// 2. c1 = r*B
+		Wire[] rBitArray = r.getBitWires(BabyJubjub.SCALAR_BIT_WIDTH).asArray();
+		c1 = new FixedBaseScalarMulGadget(BabyJubjub.BASE, rBitArray, WINDOW_SIZE).getOutputWires();
+
+		// 3. c2 = M + r*Y
+		Wire[] rY = new VariableBaseScalarMulGadget(Y, rBitArray).getOutputWires();
+		c2 = new TwistedEdwardsAddGadget(messagePoint, rY).getOutputWires();
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return new Wire[] { c1[0], c1[1], c2[0], c2[1] };
+	}
+
+	public Wire getR() { return r; }
+	public Wire[] getC1() { return c1; }
+	public Wire[] getC2() { return c2; }
+	public Wire[] getMessagePoint() { return messagePoint; }
+
+	/** Native reference: {c1, c2} for the message m, the public key Y and the randomness r **/
+	public static BigInteger[][] encrypt(BigInteger m, BigInteger[] Y, BigInteger r) {
+		BigInteger[] messagePoint = BabyJubjub.scalarMul(BabyJubjub.BASE, m);
+		BigInteger[] c1 = BabyJubjub.scalarMul(BabyJubjub.BASE, r);
+		BigInteger[] c2 = BabyJubjub.add(messagePoint, BabyJubjub.scalarMul(Y, r));
+		return new BigInteger[][] { c1, c2 };
+	}
+
+}
@@ -0,0 +1,73 @@
+package projects.elgamal;
+
+import java.math.BigInteger;
+
+import util.Util;
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+public class ElGamalBatchCircuitGenerator extends CircuitGenerator {
+
+	private static final BigInteger GENERATOR = new BigInteger("5"); // circuit constant
+
+	private int batchSize;
+	private boolean sharedRandomness;
+
+	private Wire[] M; // messages
+	private Wire y; // pk = g^x
+	private Wire[] r;
+
+	private ElGamalBatchEncryptionGadget batchEncryptionGadget;
+
+	public ElGamalBatchCircuitGenerator(String circuitName, int batchSize) {
+		this(circuitName, batchSize, false);
+	}
+
+	/**
+	 * sharedRandomness: one r for the whole batch. WARNING: under one public key this leaks the
+	 * message ratios, c2_i / c2_j = M_i / M_j is public, so use it only where that is acceptable
+	 * (e.g. the messages are themselves uniformly random).
+	 */
+	public ElGamalBatchCircuitGenerator(String circuitName, int batchSize, boolean sharedRandomness) {
+		super(circuitName);
+		this.batchSize = batchSize;
+		this.sharedRandomness = sharedRandomness;
+	}
+
+	@Override
+	protected void buildCircuit() {
+		/* Input */
+		M = createProverWitnessWireArray(batchSize, "Messages");
+		y = createInputWire("Public Key"); // Public argument
+
+		r = createProverWitnessWireArray(sharedRandomness ? 1 : batchSize, "Random r"); // witness: circuit does not depend on r
+
+		/* Encryption */
+		batchEncryptionGadget = new ElGamalBatchEncryptionGadget(M, GENERATOR, y, r);
+
+		makeOutputArray(batchEncryptionGadget.getC1(), "c1: g^r");
+		makeOutputArray(batchEncryptionGadget.getC2(), "c2: Cipher Texts");
+	}
+
+	@Override
+	public void generateSampleInput(CircuitEvaluator evaluator) {
+		for (int i = 0; i < batchSize; i++) {
+			evaluator.setWireValue(M[i], new BigInteger("980522").add(BigInteger.valueOf(i)));
+		}
+		for (int i = 0; i < r.length; i++) {
+			evaluator.setWireValue(r[i], Util.nextRandomBigInteger(Config.FIELD_PRIME));
+		}
+		evaluator.setWireValue(y, new BigInteger("4419190821368873468698544218915959266395949671068483497544284424391127985607")); // g^x, x = 65537
+	}
+
+	public static void main(String[] args) throws Exception {
+		ElGamalBatchCircuitGenerator generator = new ElGamalBatchCircuitGenerator("elgamal_batch_16", 16);
+		generator.generateCircuit();
+		generator.evalCircuit();
+		generator.prepFiles();
+		generator.runLibsnark();
+	}
+
+}
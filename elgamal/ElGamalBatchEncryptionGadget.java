@@ -0,0 +1,100 @@
+package projects.elgamal;
+
+import java.math.BigInteger;
+
+import circuit.structure.Wire;
+
+import circuit.operations.Gadget;
+
+import projects.GadgetScopes;
+
+/**
+ * ElGamal encryption of N messages under one public key y.
+ * 
+ * - shared randomness (randomness.length == 1): g^r and y^r are computed once
+ *   (MultiExponentiationGadget) and every message costs one multiplication c2_i = y^r * M_i.
+ *   WARNING: this is not semantically secure, c2_i / c2_j = M_i / M_j reveals the ratio of any
+ *   two messages. Prefer per-message randomness unless that leak is acceptable.
+ * - per-message randomness (randomness.length == N): the powers y^(2^j) are computed once
+ *   for the whole batch, so y^(r_i) is a product of selected precomputed powers
+ *   (2 constraints per bit, no squaring), and g^(r_i) uses the constant tables of
+ *   FixedBaseExponentiationGadget.
+ */
+public class ElGamalBatchEncryptionGadget extends Gadget {
+
+	private static final int WINDOW_SIZE = 2;
+	private static final int EXPONENT_BIT_WIDTH = 254;
+
+	private Wire[] messages;
+	private BigInteger g;
+	private Wire y;
+	private Wire[] randomness;
+
+	private Wire[] c1; // g^r (one per randomness)
+	private Wire[] c2; // y^r * M (one per message)
+
+	public ElGamalBatchEncryptionGadget(Wire[] messages, BigInteger g, Wire y, Wire[] randomness, String... desc) {
+		super(desc);
+		if (randomness.length != 1 && randomness.length != messages.length) {
+			throw new IllegalArgumentException("Expected one shared r or one r per message");
+		}
+
+		this.messages = messages;
+		this.g = g;
+		this.y = y;
+		this.randomness = randomness;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		c1 = new Wire[randomness.length];
+		c2 = new Wire[messages.length];
+
+		if (randomness.length == 1) {
+			Wire[] rBitArray = randomness[0].getBitWires(EXPONENT_BIT_WIDTH).asArray();
+			MultiExponentiationGadget multiExpGadget = new MultiExponentiationGadget(
+					new BigInteger[] { g }, new Wire[] { y }, rBitArray, WINDOW_SIZE);
+			c1[0] = multiExpGadget.getFixedBaseResults()[0];
+			Wire y_r = multiExpGadget.getVariableBaseResults()[0];
+			for (int i = 0; i < messages.length; i++) {
+				c2[i] = y_r.mul(messages[i]);
+			}
+			return;
+		}
+
+		// y^(2^j), shared by every message
+		Wire[] yPowers = new Wire[EXPONENT_BIT_WIDTH];
+		yPowers[0] = y;
+		for (int j = 1; j < EXPONENT_BIT_WIDTH; j++) {
+			yPowers[j] = yPowers[j - 1].mul(yPowers[j - 1]);
+		}
+
+		for (int i = 0; i < messages.length; i++) {
+			Wire[] rBitArray = randomness[i].getBitWires(EXPONENT_BIT_WIDTH).asArray();
+			c1[i] = new FixedBaseExponentiationGadget(g, rBitArray, WINDOW_SIZE).getOutputWires()[0];
+
+			// y^r = prod_j (bit_j ? y^(2^j) : 1) = prod_j (1 + bit_j * (y^(2^j) - 1))
+			Wire y_r = null;
+			for (int j = 0; j < EXPONENT_BIT_WIDTH; j++) {
+				Wire factor = rBitArray[j].mul(yPowers[j].sub(1)).add(1);
+				y_r = (y_r == null) ? factor : y_r.mul(factor);
+			}
+			c2[i] = y_r.mul(messages[i]);
+		}
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return c2;
+	}
+
+	public Wire[] getC1() { return c1; }
+	public Wire[] getC2() { return c2; }
+
+}
@@ -1,6 +1,9 @@
 package projects.elgamal;
 
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import util.Util;
 import circuit.config.Config;
@@ -12,8 +15,10 @@ import projects.elgamal.ElGamalEncryptionGadget;
 
 public class ElGamalCircuitGenerator extends CircuitGenerator {
 
+	private static final BigInteger GENERATOR = new BigInteger("5"); // circuit constant
+	private static final int MESSAGE_BIT_WIDTH = 32; // embedded curve: M is encoded as the point M*B
+
 	private Wire M;
-	private Wire g; // generator = 5
 	private Wire x; // sk = x
 	private Wire y; // pk = g^x
 
@@ -22,35 +27,57 @@ public class ElGamalCircuitGenerator extends CircuitGenerator {
 	private Wire ciphertext;
 	private Wire plaintext;
 
+	private boolean useEmbeddedCurve;
+	private BigInteger randomness; // null: fresh random r for every evaluation
+	private Wire[] Y; // embedded curve: pk = x*B
+
 	private ElGamalEncryptionGadget elgamalEncryptionGadget;
 	private ElGamalDecryptionGadget elgamalDecryptionGadget;
+	private ECElGamalEncryptionGadget ecElgamalEncryptionGadget;
+	private ECElGamalDecryptionGadget ecElgamalDecryptionGadget;
 
 	public ElGamalCircuitGenerator(String circuitName) {
+		this(circuitName, false);
+	}
+
+	/** useEmbeddedCurve: ElGamal on Baby Jubjub instead of the multiplicative group of the field **/
+	public ElGamalCircuitGenerator(String circuitName, boolean useEmbeddedCurve) {
 		super(circuitName);
+		this.useEmbeddedCurve = useEmbeddedCurve;
+	}
+
+	/** Fix the randomness r used by generateSampleInput (e.g. read from an input file) **/
+	public void setRandomness(BigInteger randomness) {
+		this.randomness = randomness;
 	}
 
 	@Override
 	protected void buildCircuit() {
+		if (useEmbeddedCurve) {
+			buildCurveCircuit();
+		} else {
+			buildFieldCircuit();
+		}
+	}
+
+	private void buildFieldCircuit() {
 		/* Input */
 		M = createProverWitnessWire("Message");
-		g = createInputWire("Generator"); // Public argument
 		x = createProverWitnessWire("Secret Key");
 		y = createInputWire("Public Key"); // Public argument
+		r = createProverWitnessWire("Random r"); // witness: circuit does not depend on r
 
 		makeOutput(M, "Message"); // 임시로 출력
-		makeOutput(g, "Generator"); // 임시로 출력
 		makeOutput(x, "Secret Key"); // 임시로 출력
 		makeOutput(y, "Public Key"); // 임시로 출력
 
 
 		/* Encryption */
-		elgamalEncryptionGadget = new ElGamalEncryptionGadget(M, g, y, oneWire); // oneWire: dummy data
+		elgamalEncryptionGadget = new ElGamalEncryptionGadget(M, GENERATOR, y, r, oneWire); // oneWire: dummy data
 
-		r = elgamalEncryptionGadget.getR();
 		g_r = elgamalEncryptionGadget.getGOfR();
 		ciphertext = elgamalEncryptionGadget.getOutputWires()[0]; // 0번째 위치에 ciphertext 저장되어 있음
 		
-		makeOutput(r, "Random r"); // 임시로 출력
 		makeOutput(g_r, "c1: g^r");
 		makeOutput(ciphertext, "c2: Cipher Text");
 
@@ -63,10 +90,49 @@ public class ElGamalCircuitGenerator extends CircuitGenerator {
 		makeOutput(plaintext, "Plain Text");
 	}
 
+	private void buildCurveCircuit() {
+		/* Input */
+		M = createProverWitnessWire("Message");
+		x = createProverWitnessWire("Secret Key");
+		Y = createInputWireArray(2, "Public Key"); // Public argument: (x, y) of x*B
+		r = createProverWitnessWire("Random r"); // witness: circuit does not depend on r
+
+		/* Encryption */
+		ecElgamalEncryptionGadget = new ECElGamalEncryptionGadget(M, Y, r, MESSAGE_BIT_WIDTH);
+
+		Wire[] c1 = ecElgamalEncryptionGadget.getC1();
+		Wire[] c2 = ecElgamalEncryptionGadget.getC2();
+
+		makeOutputArray(c1, "c1: r*B");
+		makeOutputArray(c2, "c2: M*B + r*Y");
+
+		/* Decryption */
+		ecElgamalDecryptionGadget = new ECElGamalDecryptionGadget(c1, c2, x);
+
+		Wire[] plaintextPoint = ecElgamalDecryptionGadget.getOutputWires();
+		Wire[] messagePoint = ecElgamalEncryptionGadget.getMessagePoint();
+
+		makeOutputArray(plaintextPoint, "Plain Text: M*B");
+		makeOutput(plaintextPoint[0].isEqualTo(messagePoint[0]).mul(plaintextPoint[1].isEqualTo(messagePoint[1])), "Decrypted M*B matches");
+	}
+
 	@Override
 	public void generateSampleInput(CircuitEvaluator evaluator) {
 		evaluator.setWireValue(M, new BigInteger("980522"));
-		evaluator.setWireValue(g, new BigInteger("5"));
+
+		// witness: r (the circuit and its keys stay the same for every r)
+		if (randomness != null) {
+			evaluator.setWireValue(r, randomness);
+		} else {
+			evaluator.setWireValue(r, Util.nextRandomBigInteger(useEmbeddedCurve ? BabyJubjub.ORDER : Config.FIELD_PRIME));
+		}
+
+		if (useEmbeddedCurve) {
+			BigInteger sk = new BigInteger("65537");
+			evaluator.setWireValue(x, sk);
+			evaluator.setWireValue(Y, BabyJubjub.scalarMul(BabyJubjub.BASE, sk)); // Y = x*B
+			return;
+		}
 
 		// Public Key: x = 임의의 랜덤 값 (ex. x = 10)
 		// Secret Key: y = g^x (ex. g^x = 5^10 = 9765625)
@@ -76,6 +142,10 @@ public class ElGamalCircuitGenerator extends CircuitGenerator {
 
 	public static void main(String[] args) throws Exception {
 		ElGamalCircuitGenerator generator = new ElGamalCircuitGenerator("elgamal");
+		// ElGamalCircuitGenerator generator = new ElGamalCircuitGenerator("elgamal_babyjubjub", true); // embedded curve
+		if (args.length > 0) { // optional input file holding r (decimal)
+			generator.setRandomness(new BigInteger(new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.US_ASCII).trim()));
+		}
 		generator.generateCircuit();
 		generator.evalCircuit();
 		generator.prepFiles();
@@ -12,8 +12,12 @@ import circuit.operations.Gadget;
 import examples.gadgets.math.ModGadget;
 import examples.gadgets.math.FieldDivisionGadget;
 
+import projects.GadgetScopes;
+
 public class ElGamalDecryptionGadget extends Gadget {
 
+	private static final int WINDOW_SIZE = 1; // window of the secret key x (larger windows cost more, see VariableBaseExponentiationGadget)
+
 	private Wire c1; // g^r
     private Wire c2; // cipher text = y^r * M
     private Wire x; // sk
@@ -29,31 +33,18 @@ public class ElGamalDecryptionGadget extends Gadget {
         this.x = x;
         this.one = one;
 
-		buildCircuit();
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
 	}
 
 	private void buildCircuit() {
-		// 1. c1^x
-		Wire tmp_c1 = c1.mul(one);							// 한 사이클마다 c1의 값이 제곱으로 증가됨
-		Wire c1_x = one.mul(one);						    // c1^x (결과가 저장될 wire)
-		Wire[] xBitArray = x.getBitWires(254).asArray();	// x을 bit array로 변환
-		for(int i=0; i<xBitArray.length; i++) { // 0번째 index가 맨 아랫자리 숫자
-			// 1. xBitArray[i] == 1
-			//		oneBit = 1 * tmp_c1 = tmp_c1
-			//		zeroBit = (1-1).checkNonZero() = 0
-			//	=> realValue = tmp_c1 + 0 = tmp_c1
-			// 2. rBitArray[i] == 0
-			//		oneBit = 0 * tmp_c1 = 0
-			//		zeroBit = (0-1).checkNonZero() = 1
-			// => realValue = 0 + 1 = 1
-
-			Wire oneBit = xBitArray[i].mul(tmp_c1);
-			Wire zeroBit = xBitArray[i].sub(new BigInteger("1")).checkNonZero();
-			Wire realValue = oneBit.add(zeroBit);
-
-			c1_x = c1_x.mul(realValue);
-			tmp_c1 = tmp_c1.mul(tmp_c1);
-		}
+		// 1. c1^x: square-and-multiply, acc^2 * (1 + b*(c1 - 1)) per bit, no checkNonZero per bit
+		VariableBaseExponentiationGadget expGadget = new VariableBaseExponentiationGadget(c1, x, 254, WINDOW_SIZE);
+		Wire c1_x = expGadget.getOutputWires()[0];
 
         // 2. c2 / c1^x (mod p)
         FieldDivisionGadget fieldDivisionGadget = new FieldDivisionGadget(c2, c1_x);
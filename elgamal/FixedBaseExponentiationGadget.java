@@ -0,0 +1,115 @@
+package projects.elgamal;
+
+import java.math.BigInteger;
+
+import circuit.config.Config;
+import circuit.structure.Wire;
+
+import circuit.operations.Gadget;
+
+import projects.GadgetScopes;
+
+/**
+ * base^e (mod FIELD_PRIME) for a constant base and an exponent given as bits (LSB first).
+ * 
+ * The exponent is cut into windows of windowSize bits. For window j the constant table
+ * T_j[v] = base^(v * 2^(j*windowSize)) is precomputed outside the circuit and the entry
+ * is selected by a polynomial in the window bits (only the bit products cost
+ * constraints), so there is no squaring and no checkNonZero in the circuit.
+ * 
+ * Cost per window: 2^w - w - 1 products for the selector + 1 multiplication, i.e.
+ * about 1 constraint per exponent bit for w = 1 or 2.
+ */
+public class FixedBaseExponentiationGadget extends Gadget {
+
+	private BigInteger base;
+	private Wire[] exponentBits;
+	private int windowSize;
+
+	private Wire result;
+
+	public FixedBaseExponentiationGadget(BigInteger base, Wire[] exponentBits, int windowSize, String... desc) {
+		super(desc);
+
+		this.base = base;
+		this.exponentBits = exponentBits;
+		this.windowSize = windowSize;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		BigInteger windowBase = base.mod(Config.FIELD_PRIME); // base^(2^(j*windowSize))
+		result = null;
+		for (int offset = 0; offset < exponentBits.length; offset += windowSize) {
+			int width = Math.min(windowSize, exponentBits.length - offset);
+			Wire[] windowBits = new Wire[width];
+			System.arraycopy(exponentBits, offset, windowBits, 0, width);
+
+			BigInteger[] table = new BigInteger[1 << width];
+			table[0] = BigInteger.ONE;
+			for (int v = 1; v < table.length; v++) {
+				table[v] = table[v - 1].multiply(windowBase).mod(Config.FIELD_PRIME);
+			}
+
+			Wire selected = selectConstant(table, windowBits);
+			result = (result == null) ? selected : result.mul(selected);
+
+			windowBase = windowBase.modPow(BigInteger.ONE.shiftLeft(width), Config.FIELD_PRIME);
+		}
+		if (result == null) {
+			result = generator.getOneWire();
+		}
+	}
+
+	/**
+	 * table[bits] as the multilinear polynomial sum_S c_S * prod_{i in S} bits[i],
+	 * where c_S is the Moebius transform of the table.
+	 */
+	private Wire selectConstant(BigInteger[] table, Wire[] bits) {
+		BigInteger[] coefficients = moebiusCoefficients(table);
+
+		Wire[] monomials = bitMonomials(bits);
+		Wire selected = generator.createConstantWire(coefficients[0]);
+		for (int s = 1; s < coefficients.length; s++) {
+			selected = selected.add(monomials[s].mul(coefficients[s]));
+		}
+		return selected;
+	}
+
+	/** c_S = sum_{T subset of S} (-1)^|S - T| table[T] (mod FIELD_PRIME) **/
+	static BigInteger[] moebiusCoefficients(BigInteger[] table) {
+		BigInteger[] coefficients = table.clone();
+		for (int i = 0; (1 << i) < coefficients.length; i++) {
+			for (int s = 0; s < coefficients.length; s++) {
+				if ((s & (1 << i)) != 0) {
+					coefficients[s] = coefficients[s].subtract(coefficients[s ^ (1 << i)]).mod(Config.FIELD_PRIME);
+				}
+			}
+		}
+		return coefficients;
+	}
+
+	/** monomials[s] = product of the bits in the subset s, 2^w - w - 1 multiplications **/
+	static Wire[] bitMonomials(Wire[] bits) {
+		Wire[] monomials = new Wire[1 << bits.length];
+		monomials[0] = null; // empty product, handled by the callers as the constant term
+		for (int s = 1; s < monomials.length; s++) {
+			int lowest = Integer.numberOfTrailingZeros(s);
+			int rest = s & (s - 1);
+			monomials[s] = (rest == 0) ? bits[lowest] : monomials[rest].mul(bits[lowest]);
+		}
+		return monomials;
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return new Wire[] { result };
+	}
+
+}
@@ -0,0 +1,85 @@
+package projects.elgamal;
+
+import java.math.BigInteger;
+
+import circuit.config.Config;
+import circuit.structure.Wire;
+
+import circuit.operations.Gadget;
+
+import projects.GadgetScopes;
+
+/**
+ * k*P on Baby Jubjub for a constant point P and a scalar given as bits (LSB first).
+ * 
+ * For window j the constant points v * 2^(j*w) * P are precomputed, the entry is
+ * selected with the same bit monomials as FixedBaseExponentiationGadget (linear in the
+ * constant coordinates), and the selected points are summed with complete additions.
+ * With w = 3: 4 products + 1 addition (6) per 3 bits.
+ */
+public class FixedBaseScalarMulGadget extends Gadget {
+
+	private BigInteger[] point;
+	private Wire[] scalarBits;
+	private int windowSize;
+
+	private Wire[] result;
+
+	public FixedBaseScalarMulGadget(BigInteger[] point, Wire[] scalarBits, int windowSize, String... desc) {
+		super(desc);
+
+		this.point = point;
+		this.scalarBits = scalarBits;
+		this.windowSize = windowSize;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		BigInteger[] windowPoint = point; // 2^(j*w) * P
+		result = null;
+		for (int offset = 0; offset < scalarBits.length; offset += windowSize) {
+			int width = Math.min(windowSize, scalarBits.length - offset);
+			Wire[] windowBits = new Wire[width];
+			System.arraycopy(scalarBits, offset, windowBits, 0, width);
+
+			BigInteger[] tableX = new BigInteger[1 << width];
+			BigInteger[] tableY = new BigInteger[1 << width];
+			BigInteger[] entry = BabyJubjub.IDENTITY;
+			for (int v = 0; v < tableX.length; v++) {
+				tableX[v] = entry[0];
+				tableY[v] = entry[1];
+				entry = BabyJubjub.add(entry, windowPoint);
+			}
+
+			Wire[] monomials = FixedBaseExponentiationGadget.bitMonomials(windowBits);
+			Wire[] selected = new Wire[] { selectConstant(tableX, monomials), selectConstant(tableY, monomials) };
+			result = (result == null) ? selected : new TwistedEdwardsAddGadget(result, selected).getOutputWires();
+
+			windowPoint = BabyJubjub.scalarMul(windowPoint, BigInteger.ONE.shiftLeft(width));
+		}
+		if (result == null) {
+			result = new Wire[] { generator.getZeroWire(), generator.getOneWire() };
+		}
+	}
+
+	private Wire selectConstant(BigInteger[] table, Wire[] monomials) {
+		BigInteger[] coefficients = FixedBaseExponentiationGadget.moebiusCoefficients(table);
+		Wire selected = generator.createConstantWire(coefficients[0].mod(Config.FIELD_PRIME));
+		for (int s = 1; s < coefficients.length; s++) {
+			selected = selected.add(monomials[s].mul(coefficients[s]));
+		}
+		return selected;
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return result;
+	}
+
+}
@@ -0,0 +1,147 @@
+package projects.elgamal;
+
+import java.math.BigInteger;
+
+import circuit.config.Config;
+import circuit.structure.Wire;
+
+import circuit.operations.Gadget;
+
+import projects.GadgetScopes;
+
+/**
+ * Several bases raised to one shared exponent given as bits (LSB first):
+ * outputs fixedBases[i]^e and variableBases[j]^e (mod FIELD_PRIME).
+ * 
+ * All bases use the same windows of the exponent, and the bit products of every window
+ * (the selector monomials) are computed once and shared by all the bases.
+ *  - fixed bases: constant table per window, 1 multiplication per window
+ *  - variable bases: in-circuit table base^0 .. base^(2^w - 1), then left to right
+ *    acc = acc^(2^w) * table[window], with 2^w - 1 multiplications for the selection
+ */
+public class MultiExponentiationGadget extends Gadget {
+
+	private BigInteger[] fixedBases;
+	private Wire[] variableBases;
+	private Wire[] exponentBits;
+	private int windowSize;
+
+	private Wire[] fixedResults;
+	private Wire[] variableResults;
+
+	public MultiExponentiationGadget(BigInteger[] fixedBases, Wire[] variableBases, Wire[] exponentBits,
+			int windowSize, String... desc) {
+		super(desc);
+
+		this.fixedBases = fixedBases;
+		this.variableBases = variableBases;
+		this.exponentBits = exponentBits;
+		this.windowSize = windowSize;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		int numWindows = (exponentBits.length + windowSize - 1) / windowSize;
+		int tableSize = 1 << windowSize;
+
+		// in-circuit power tables of the variable bases (independent of the window)
+		Wire[][] variableTables = new Wire[variableBases.length][tableSize];
+		for (int j = 0; j < variableBases.length; j++) {
+			variableTables[j][0] = generator.getOneWire();
+			variableTables[j][1] = variableBases[j];
+			for (int v = 2; v < tableSize; v++) {
+				variableTables[j][v] = variableTables[j][v - 1].mul(variableBases[j]);
+			}
+		}
+
+		fixedResults = new Wire[fixedBases.length];
+		variableResults = new Wire[variableBases.length];
+
+		// most significant window first, so the variable accumulators only need squarings
+		for (int k = numWindows - 1; k >= 0; k--) {
+			int offset = k * windowSize;
+			int width = Math.min(windowSize, exponentBits.length - offset);
+			Wire[] windowBits = new Wire[width];
+			System.arraycopy(exponentBits, offset, windowBits, 0, width);
+			Wire[] monomials = FixedBaseExponentiationGadget.bitMonomials(windowBits); // shared by all bases
+
+			for (int i = 0; i < fixedBases.length; i++) {
+				BigInteger windowBase = fixedBases[i].modPow(BigInteger.ONE.shiftLeft(offset), Config.FIELD_PRIME);
+				BigInteger[] table = new BigInteger[1 << width];
+				table[0] = BigInteger.ONE;
+				for (int v = 1; v < table.length; v++) {
+					table[v] = table[v - 1].multiply(windowBase).mod(Config.FIELD_PRIME);
+				}
+				BigInteger[] coefficients = FixedBaseExponentiationGadget.moebiusCoefficients(table);
+				Wire selected = generator.createConstantWire(coefficients[0]);
+				for (int s = 1; s < coefficients.length; s++) {
+					selected = selected.add(monomials[s].mul(coefficients[s]));
+				}
+				fixedResults[i] = (fixedResults[i] == null) ? selected : fixedResults[i].mul(selected);
+			}
+
+			for (int j = 0; j < variableBases.length; j++) {
+				Wire selected = selectVariable(variableTables[j], monomials, width);
+				if (variableResults[j] == null) {
+					variableResults[j] = selected;
+				} else {
+					Wire acc = variableResults[j];
+					for (int b = 0; b < width; b++) {
+						acc = acc.mul(acc);
+					}
+					variableResults[j] = acc.mul(selected);
+				}
+			}
+		}
+
+		for (int i = 0; i < fixedBases.length; i++) {
+			if (fixedResults[i] == null) { fixedResults[i] = generator.getOneWire(); }
+		}
+		for (int j = 0; j < variableBases.length; j++) {
+			if (variableResults[j] == null) { variableResults[j] = generator.getOneWire(); }
+		}
+	}
+
+	/** table[window] = sum_S c_S * monomial_S, where the c_S are linear in the table wires **/
+	private Wire selectVariable(Wire[] table, Wire[] monomials, int width) {
+		int size = 1 << width;
+		Wire[] coefficients = new Wire[size];
+		System.arraycopy(table, 0, coefficients, 0, size);
+		for (int i = 0; i < width; i++) {
+			for (int s = 0; s < size; s++) {
+				if ((s & (1 << i)) != 0) {
+					coefficients[s] = coefficients[s].sub(coefficients[s ^ (1 << i)]);
+				}
+			}
+		}
+
+		Wire selected = coefficients[0];
+		for (int s = 1; s < size; s++) {
+			selected = selected.add(monomials[s].mul(coefficients[s]));
+		}
+		return selected;
+	}
+
+	public Wire[] getFixedBaseResults() {
+		return fixedResults;
+	}
+
+	public Wire[] getVariableBaseResults() {
+		return variableResults;
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		Wire[] out = new Wire[fixedResults.length + variableResults.length];
+		System.arraycopy(fixedResults, 0, out, 0, fixedResults.length);
+		System.arraycopy(variableResults, 0, out, fixedResults.length, variableResults.length);
+		return out;
+	}
+
+}
@@ -0,0 +1,57 @@
+package projects.elgamal;
+
+import circuit.structure.Wire;
+
+import circuit.operations.Gadget;
+import examples.gadgets.math.FieldDivisionGadget;
+
+import projects.GadgetScopes;
+
+/**
+ * Complete addition on Baby Jubjub (also valid for doubling and the identity):
+ * 
+ *   x3 = (x1*y2 + y1*x2) / (1 + d*x1*x2*y1*y2)
+ *   y3 = (y1*y2 - a*x1*x2) / (1 - d*x1*x2*y1*y2)
+ * 
+ * 4 multiplications + 2 field divisions = 6 constraints.
+ */
+public class TwistedEdwardsAddGadget extends Gadget {
+
+	private Wire[] p1;
+	private Wire[] p2;
+
+	private Wire[] sum;
+
+	public TwistedEdwardsAddGadget(Wire[] p1, Wire[] p2, String... desc) {
+		super(desc);
+
+		this.p1 = p1;
+		this.p2 = p2;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		Wire beta = p1[0].mul(p2[1]);									// x1*y2
+		Wire gamma = p1[1].mul(p2[0]);									// y1*x2
+		Wire delta = p1[1].sub(p1[0].mul(BabyJubjub.A)).mul(p2[0].add(p2[1]));	// (y1 - a*x1)*(x2 + y2)
+		Wire tau = beta.mul(gamma);										// x1*x2*y1*y2
+
+		Wire dTau = tau.mul(BabyJubjub.D);
+		Wire x3 = new FieldDivisionGadget(beta.add(gamma), dTau.add(1)).getOutputWires()[0];
+		Wire y3 = new FieldDivisionGadget(delta.add(beta.mul(BabyJubjub.A)).sub(gamma), dTau.negate().add(1))
+				.getOutputWires()[0];
+		sum = new Wire[] { x3, y3 };
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return sum;
+	}
+
+}
@@ -0,0 +1,65 @@
+package projects.elgamal;
+
+import java.math.BigInteger;
+
+import circuit.structure.Wire;
+
+import circuit.operations.Gadget;
+
+import projects.GadgetScopes;
+
+/**
+ * a^e (mod FIELD_PRIME) for a base wire a, with k-bit windows.
+ * 
+ * A table a^0 .. a^(2^k - 1) is built once in the circuit (2^k - 2 constraints), each window
+ * of e selects its entry as sum_S c_S * monomial_S over the products of window bits, and the
+ * accumulator is squared k times between windows. The table entries are wires, so every
+ * monomial times its coefficient is a multiplication: with k = 2 a window costs 1 (b0 * b1)
+ * + 3 (selection) + 2 (squarings) + 1 (accumulation) = 7 constraints, i.e. 3.5 per exponent
+ * bit, plus 1 per bit for the booleanity of the bits when the exponent is split here.
+ * 
+ * With k = 1 this is the plain ladder acc^2 * (1 + b*(a - 1)): 3 constraints per bit. With a
+ * selector linear in the monomials, windows > 1 do not pay off for a variable base (the
+ * selection grows with the table); use k = 1. Windows help for fixed bases only, whose
+ * table entries are constants (FixedBaseExponentiationGadget).
+ */
+public class VariableBaseExponentiationGadget extends Gadget {
+
+	private Wire base;
+	private Wire[] exponentBits;
+	private int windowSize;
+
+	private Wire result;
+
+	public VariableBaseExponentiationGadget(Wire base, Wire exponent, int exponentBitWidth, int windowSize,
+			String... desc) {
+		this(base, exponent.getBitWires(exponentBitWidth).asArray(), windowSize, desc);
+	}
+
+	public VariableBaseExponentiationGadget(Wire base, Wire[] exponentBits, int windowSize, String... desc) {
+		super(desc);
+
+		this.base = base;
+		this.exponentBits = exponentBits;
+		this.windowSize = windowSize;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		MultiExponentiationGadget multiExpGadget = new MultiExponentiationGadget(
+				new BigInteger[0], new Wire[] { base }, exponentBits, windowSize, description);
+		result = multiExpGadget.getVariableBaseResults()[0];
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return new Wire[] { result };
+	}
+
+}
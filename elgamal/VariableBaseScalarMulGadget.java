@@ -0,0 +1,59 @@
+package projects.elgamal;
+
+import circuit.structure.Wire;
+
+import circuit.operations.Gadget;
+
+import projects.GadgetScopes;
+
+/**
+ * k*P on Baby Jubjub for a point given as wires and a scalar given as bits (LSB first):
+ * double-and-add with complete formulas, the conditional addition is a 2-multiplication
+ * multiplexer on the coordinates (about 14 constraints per bit).
+ */
+public class VariableBaseScalarMulGadget extends Gadget {
+
+	private Wire[] point;
+	private Wire[] scalarBits;
+
+	private Wire[] result;
+
+	public VariableBaseScalarMulGadget(Wire[] point, Wire[] scalarBits, String... desc) {
+		super(desc);
+
+		this.point = point;
+		this.scalarBits = scalarBits;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		Wire[] doubled = point; // 2^i * P
+		Wire[] acc = null;
+		for (int i = 0; i < scalarBits.length; i++) {
+			if (acc == null) {
+				// acc = identity -> bit ? P : (0, 1)
+				acc = new Wire[] { scalarBits[i].mul(doubled[0]), scalarBits[i].mul(doubled[1].sub(1)).add(1) };
+			} else {
+				Wire[] sum = new TwistedEdwardsAddGadget(acc, doubled).getOutputWires();
+				acc = new Wire[] { acc[0].add(scalarBits[i].mul(sum[0].sub(acc[0]))),
+						acc[1].add(scalarBits[i].mul(sum[1].sub(acc[1]))) };
+			}
+			if (i + 1 < scalarBits.length) {
+				doubled = new TwistedEdwardsAddGadget(doubled, doubled).getOutputWires();
+			}
+		}
+		result = (acc == null) ? new Wire[] { generator.getZeroWire(), generator.getOneWire() } : acc;
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return result;
+	}
+
+}
@@ -0,0 +1,52 @@
+package projects.hash;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import circuit.config.Config;
+
+
+/**
+ * Deterministic round constants for the field-native hash functions.
+ * 
+ * constant(domain, i) = SHA256(domain | i) mod FIELD_PRIME, so the circuit and the
+ * native implementation always agree without shipping large constant tables.
+ * 
+ */
+
+final class FieldHashConstants {
+
+	private FieldHashConstants() {
+	}
+
+	static BigInteger[] roundConstants(String domain, int count) {
+		BigInteger[] constants = new BigInteger[count];
+		for (int i = 0; i < count; i++) {
+			byte[] digest = sha256((domain + "_" + i).getBytes(StandardCharsets.US_ASCII));
+			constants[i] = new BigInteger(1, digest).mod(Config.FIELD_PRIME);
+		}
+		return constants;
+	}
+
+	/** Cauchy matrix M[i][j] = 1 / (x_i + y_j) with x_i = i, y_j = t + j, which is MDS **/
+	static BigInteger[][] cauchyMatrix(int t) {
+		BigInteger[][] matrix = new BigInteger[t][t];
+		for (int i = 0; i < t; i++) {
+			for (int j = 0; j < t; j++) {
+				matrix[i][j] = BigInteger.valueOf(i + t + j).modInverse(Config.FIELD_PRIME);
+			}
+		}
+		return matrix;
+	}
+
+	private static byte[] sha256(byte[] message) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(message);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package projects.hash;
+
+import java.math.BigInteger;
+
+import circuit.structure.Wire;
+
+
+/**
+ * A collision resistant hash function that can be plugged into the Merkle tree
+ * path gadgets and the Zcash commitment/PRF computations.
+ * 
+ * A digest is represented by getDigestWidth() wires (8 x 32-bit words for SHA-256,
+ * a single field element for the field-native hashes). Every circuit method has a
+ * native counterpart computing the same value off-circuit for witness generation.
+ * 
+ */
+
+public interface HashFunction {
+
+	/** number of wires in one digest **/
+	public int getDigestWidth();
+
+	/** H(inputs): hash of a message given as words of bitWidthPerInputElement bits **/
+	public Wire[] hash(Wire[] inputs, int bitWidthPerInputElement, int totalLengthInBytes, String... desc);
+
+	/** H(left | right): two-to-one compression used for the internal nodes of the tree **/
+	public Wire[] compress(Wire[] left, Wire[] right, String... desc);
+
+	public BigInteger[] nativeHash(BigInteger[] inputs, int bitWidthPerInputElement, int totalLengthInBytes);
+
+	public BigInteger[] nativeCompress(BigInteger[] left, BigInteger[] right);
+
+}
@@ -0,0 +1,114 @@
+package projects.hash;
+
+import java.math.BigInteger;
+
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.operations.Gadget;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+
+import projects.GadgetScopes;
+
+
+/**
+ * Public input packing: numWords words of wordBitWidth bits are exposed as a few field
+ * elements of WORDS_PER_ELEMENT words (7 x 32 bits = 224 bits per element for the
+ * 32-bit digest words), which is what the verifier pays for.
+ * 
+ * The gadget gives back the words as prover witnesses (computed from the packed inputs,
+ * range checked and bound to them) for circuits that use the words themselves. When the
+ * words are computed in the circuit anyway, pack() them and compare the packed values
+ * instead: that costs nothing.
+ * 
+ */
+
+public class InputPackingGadget extends Gadget {
+
+	private Wire[] packedInputs;
+	private int numWords;
+	private int wordBitWidth;
+
+	private Wire[] words;
+
+	public InputPackingGadget(Wire[] packedInputs, int numWords, int wordBitWidth, String... desc) {
+		super(desc);
+		if (packedInputs.length != numOfElements(numWords, wordBitWidth)) {
+			throw new IllegalArgumentException("Expected " + numOfElements(numWords, wordBitWidth) + " packed inputs");
+		}
+		this.packedInputs = packedInputs;
+		this.numWords = numWords;
+		this.wordBitWidth = wordBitWidth;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		words = generator.createProverWitnessWireArray(numWords, "Unpacked public words");
+		generator.specifyProverWitnessComputation(new Instruction() {
+			@Override
+			public void evaluate(CircuitEvaluator evaluator) {
+				BigInteger[] packed = evaluator.getWiresValues(packedInputs);
+				BigInteger[] unpacked = unpack(packed, numWords, wordBitWidth);
+				evaluator.setWireValue(words, unpacked);
+			}
+		});
+
+		// range check: the packing is injective only for words of wordBitWidth bits
+		for (int i = 0; i < numWords; i++) {
+			words[i].getBitWires(wordBitWidth);
+		}
+		Wire[] actualPacked = pack(words, wordBitWidth);
+		for (int i = 0; i < packedInputs.length; i++) {
+			generator.addEqualityAssertion(actualPacked[i], packedInputs[i]);
+		}
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return words;
+	}
+
+	public static int wordsPerElement(int wordBitWidth) {
+		return (Config.FIELD_PRIME.bitLength() - 1) / wordBitWidth;
+	}
+
+	public static int numOfElements(int numWords, int wordBitWidth) {
+		int wordsPerElement = wordsPerElement(wordBitWidth);
+		return (numWords + wordsPerElement - 1) / wordsPerElement;
+	}
+
+	/** linear combination of the words, first word in the low bits of the first element **/
+	public static Wire[] pack(Wire[] words, int wordBitWidth) {
+		return new WireArray(words).packWordsIntoLargerWords(wordBitWidth, wordsPerElement(wordBitWidth));
+	}
+
+	public static BigInteger[] pack(BigInteger[] words, int wordBitWidth) {
+		int wordsPerElement = wordsPerElement(wordBitWidth);
+		BigInteger[] packed = new BigInteger[numOfElements(words.length, wordBitWidth)];
+		for (int i = 0; i < packed.length; i++) {
+			packed[i] = BigInteger.ZERO;
+			for (int j = Math.min(words.length, (i + 1) * wordsPerElement) - 1; j >= i * wordsPerElement; j--) {
+				packed[i] = packed[i].shiftLeft(wordBitWidth).add(words[j]);
+			}
+		}
+		return packed;
+	}
+
+	public static BigInteger[] unpack(BigInteger[] packed, int numWords, int wordBitWidth) {
+		int wordsPerElement = wordsPerElement(wordBitWidth);
+		BigInteger mask = BigInteger.ONE.shiftLeft(wordBitWidth).subtract(BigInteger.ONE);
+		BigInteger[] words = new BigInteger[numWords];
+		for (int j = 0; j < numWords; j++) {
+			words[j] = packed[j / wordsPerElement].shiftRight(wordBitWidth * (j % wordsPerElement)).and(mask);
+		}
+		return words;
+	}
+
+}
@@ -8,7 +8,10 @@ import circuit.eval.CircuitEvaluator;
 import circuit.structure.CircuitGenerator;
 import circuit.structure.Wire;
 
+import projects.GadgetScopes;
 import projects.hash.MerkleTreePathGadget;
+import projects.hash.HashFunction;
+import projects.hash.SHA256HashFunction;
 
 public class MTMSHA256CircuitGenerator extends CircuitGenerator {
 
@@ -19,13 +22,43 @@ public class MTMSHA256CircuitGenerator extends CircuitGenerator {
 	private int leafNumOfWords = 10;
 	private int leafWordBitWidth = 32;
 	private int treeHeight;
-	private int hashDigestDimension = 8;
+	private int hashDigestDimension;
 
+	private HashFunction hashFunction;
+	private boolean bitLevelPath;
+	private boolean packPublicInputs;
 	private MerkleTreePathGadget merkleTreeGadget;
+	private MerkleTreeBitPathGadget merkleTreeBitGadget;
+
+	private MerkleTreeStore tree; // optional source of the co-path, root and direction selector
+	private long treePosition;
+	private BigInteger[] treeLeaf;
 	
 	public MTMSHA256CircuitGenerator(String circuitName, int treeHeight) {
+		this(circuitName, treeHeight, new SHA256HashFunction());
+	}
+
+	public MTMSHA256CircuitGenerator(String circuitName, int treeHeight, HashFunction hashFunction) {
+		this(circuitName, treeHeight, hashFunction, false);
+	}
+
+	/** bitLevelPath: keep digests as bits between levels (SHA-256 based hash functions only) **/
+	public MTMSHA256CircuitGenerator(String circuitName, int treeHeight, HashFunction hashFunction, boolean bitLevelPath) {
+		this(circuitName, treeHeight, hashFunction, bitLevelPath, false);
+	}
+
+	/** packPublicInputs: the root words as 2 field elements of 7 words, and no root output (SHA-256 based hash functions only) **/
+	public MTMSHA256CircuitGenerator(String circuitName, int treeHeight, HashFunction hashFunction, boolean bitLevelPath,
+			boolean packPublicInputs) {
 		super(circuitName);
+		if ((bitLevelPath || packPublicInputs) && !(hashFunction instanceof SHA256HashFunction)) {
+			throw new IllegalArgumentException("Bit level path and input packing require a SHA-256 based hash function");
+		}
 		this.treeHeight = treeHeight;
+		this.hashFunction = hashFunction;
+		this.hashDigestDimension = hashFunction.getDigestWidth();
+		this.bitLevelPath = bitLevelPath;
+		this.packPublicInputs = packPublicInputs;
 	}
 
 	@Override
@@ -33,59 +66,120 @@ public class MTMSHA256CircuitGenerator extends CircuitGenerator {
 		
 		/** declare inputs **/
 		
-		publicRootWires = createInputWireArray(hashDigestDimension, "Input Merkle Tree Root");
+		if (packPublicInputs) {
+			publicRootWires = createInputWireArray(InputPackingGadget.numOfElements(hashDigestDimension, 32), "Packed Merkle Tree Root");
+		} else {
+			publicRootWires = createInputWireArray(hashDigestDimension, "Input Merkle Tree Root");
+		}
 		intermediateHasheWires = createProverWitnessWireArray(hashDigestDimension * treeHeight, "Intermediate Hashes");
 		directionSelector = createProverWitnessWire("Direction selector");
 		leafWires = createProverWitnessWireArray(leafNumOfWords, "Secret Leaf");
 
 		/** connect gadget **/
 
-		merkleTreeGadget = new MerkleTreePathGadget(
-				directionSelector, leafWires, intermediateHasheWires, leafWordBitWidth, treeHeight);
-		Wire[] actualRoot = merkleTreeGadget.getOutputWires();
-		
-		/** Now compare the actual root with the public known root **/
-		Wire errorAccumulator = getZeroWire();
-		for(int i = 0; i < hashDigestDimension; i++){
-			Wire diff = actualRoot[i].sub(publicRootWires[i]);
-			Wire check = diff.checkNonZero();
-			errorAccumulator = errorAccumulator.add(check);
+		Wire[] actualRoot;
+		Wire errorAccumulator;
+		if (bitLevelPath) {
+			merkleTreeBitGadget = new MerkleTreeBitPathGadget(directionSelector, leafWires, intermediateHasheWires,
+					leafWordBitWidth, treeHeight, hashFunction instanceof SHA256CompressionHashFunction);
+			actualRoot = merkleTreeBitGadget.getOutputWires();
+		} else {
+			merkleTreeGadget = new MerkleTreePathGadget(
+					directionSelector, leafWires, intermediateHasheWires, leafWordBitWidth, treeHeight, hashFunction);
+			actualRoot = merkleTreeGadget.getOutputWires();
+		}
+
+		GadgetScopes.enter("root comparison");
+		try {
+			if (packPublicInputs) {
+				/** Compare the packed actual root with the packed public root (the digest words are 32 bits) **/
+				Wire[] actualPacked = InputPackingGadget.pack(actualRoot, 32);
+				errorAccumulator = getZeroWire();
+				for(int i = 0; i < actualPacked.length; i++){
+					errorAccumulator = errorAccumulator.add(actualPacked[i].sub(publicRootWires[i]).checkNonZero());
+				}
+			} else if (bitLevelPath) {
+				/** Compare the actual root with the public known root, packed into field elements **/
+				errorAccumulator = merkleTreeBitGadget.checkRoot(publicRootWires);
+			} else {
+				/** Now compare the actual root with the public known root **/
+				errorAccumulator = getZeroWire();
+				for(int i = 0; i < hashDigestDimension; i++){
+					Wire diff = actualRoot[i].sub(publicRootWires[i]);
+					Wire check = diff.checkNonZero();
+					errorAccumulator = errorAccumulator.add(check);
+				}
+			}
+		} finally {
+			GadgetScopes.exit();
 		}
 		
-		makeOutputArray(actualRoot, "Computed Root");
+		if (!packPublicInputs) {
+			makeOutputArray(actualRoot, "Computed Root");
+		}
 		
 		/** Expected mismatch here if the sample input below is tried**/
 		makeOutput(errorAccumulator.checkNonZero(), "Error if NON-zero");
 		
 	}
 
+	/** Take the witness from a real tree instead of the sample constants: the leaf at the given position **/
+	public void setTree(MerkleTreeStore tree, long position, BigInteger[] leaf) {
+		if (tree.getTreeHeight() != treeHeight || leaf.length != leafNumOfWords) {
+			throw new IllegalArgumentException("Tree or leaf does not match the circuit");
+		}
+		this.tree = tree;
+		this.treePosition = position;
+		this.treeLeaf = leaf;
+	}
+
 	@Override
 	public void generateSampleInput(CircuitEvaluator circuitEvaluator) {
-		// input: root
-		circuitEvaluator.setWireValue(publicRootWires[0], new BigInteger("3229234860"));
-		circuitEvaluator.setWireValue(publicRootWires[1], new BigInteger("4261587088"));
-		circuitEvaluator.setWireValue(publicRootWires[2], new BigInteger("2478376568"));
-		circuitEvaluator.setWireValue(publicRootWires[3], new BigInteger("4097056101"));
-		circuitEvaluator.setWireValue(publicRootWires[4], new BigInteger("2687676531"));
-		circuitEvaluator.setWireValue(publicRootWires[5], new BigInteger("3281229791"));
-		circuitEvaluator.setWireValue(publicRootWires[6], new BigInteger("0751616963"));
-		circuitEvaluator.setWireValue(publicRootWires[7], new BigInteger("1949075653"));
-		
+		if (tree != null) {
+			tree.setPathWitness(circuitEvaluator, treePosition, directionSelector, intermediateHasheWires, null);
+			circuitEvaluator.setWireValue(leafWires, treeLeaf);
+			setRoot(circuitEvaluator, tree.getRoot());
+			return;
+		}
+
 		// witness: direction selector
 		circuitEvaluator.setWireValue(directionSelector, new BigInteger("3")); // 3 -> binary: 11 -> 2 bits
 		// circuitEvaluator.setWireValue(directionSelector, Util.nextRandomBigInteger(treeHeight)); // test code
 
 		// witness: co-path
-		for(int i=0; i<hashDigestDimension; i++) { circuitEvaluator.setWireValue(intermediateHasheWires[i], new BigInteger("1234567890")); }
-		for(int i=hashDigestDimension; i<hashDigestDimension*2; i++) { circuitEvaluator.setWireValue(intermediateHasheWires[i], new BigInteger("0987654321")); }
-		// for(int i=0; i<hashDigestDimension*treeHeight; i++) { circuitEvaluator.setWireValue(intermediateHasheWires[i], new BigInteger("1234567890")); } // test code
+		BigInteger[] coPath = new BigInteger[hashDigestDimension * treeHeight];
+		for(int i=0; i<coPath.length; i++) { coPath[i] = i < hashDigestDimension ? new BigInteger("1234567890") : new BigInteger("0987654321"); }
+		// for(int i=0; i<hashDigestDimension*treeHeight; i++) { coPath[i] = new BigInteger("1234567890"); } // test code
+		circuitEvaluator.setWireValue(intermediateHasheWires, coPath);
 		
 		// witness: leaf node -> cm
-		for(int i=0; i<leafNumOfWords; i++){ circuitEvaluator.setWireValue(leafWires[i], Integer.MAX_VALUE); }
+		BigInteger[] leaf = new BigInteger[leafNumOfWords];
+		for(int i=0; i<leafNumOfWords; i++){ leaf[i] = BigInteger.valueOf(Integer.MAX_VALUE); }
+		circuitEvaluator.setWireValue(leafWires, leaf);
+
+		// input: root
+		if (hashFunction.getClass() == SHA256HashFunction.class) { // the constant is the padded SHA-256 root only
+			setRoot(circuitEvaluator, new BigInteger[] { new BigInteger("3229234860"), new BigInteger("4261587088"),
+					new BigInteger("2478376568"), new BigInteger("4097056101"), new BigInteger("2687676531"),
+					new BigInteger("3281229791"), new BigInteger("0751616963"), new BigInteger("1949075653") });
+		} else {
+			BigInteger[] root = MerkleTreePathGadget.computeRoot(hashFunction, new BigInteger("3"), leaf, coPath, leafWordBitWidth, treeHeight);
+			setRoot(circuitEvaluator, root);
+		}
+	}
+
+	private void setRoot(CircuitEvaluator circuitEvaluator, BigInteger[] root) {
+		circuitEvaluator.setWireValue(publicRootWires, packPublicInputs ? InputPackingGadget.pack(root, 32) : root);
 	}
 	
 	public static void main(String[] args) throws Exception {
 		MTMSHA256CircuitGenerator generator = new MTMSHA256CircuitGenerator("tree_2_sha256", 2);
+		// MTMSHA256CircuitGenerator generator = new MTMSHA256CircuitGenerator("tree_2_poseidon", 2, new PoseidonHashFunction()); // SNARK-friendly hash
+		// MTMSHA256CircuitGenerator generator = new MTMSHA256CircuitGenerator("tree_2_sha256_compress", 2, new SHA256CompressionHashFunction()); // unpadded internal nodes
+		// MTMSHA256CircuitGenerator generator = new MTMSHA256CircuitGenerator("tree_2_sha256_bits", 2, new SHA256HashFunction(), true); // bit level path
+		// MTMSHA256CircuitGenerator generator = new MTMSHA256CircuitGenerator("tree_2_sha256_packed", 2, new SHA256HashFunction(), false, true); // 2 public inputs
+		// MerkleTreeStore tree = new MerkleTreeStore(new File("tree_2_sha256.nodes"), 2, 2, new SHA256HashFunction(), 32); // real co-path
+		// generator.setTree(tree, tree.append(leaf), leaf);
 		generator.generateCircuit();
 		generator.evalCircuit();
 		generator.prepFiles();
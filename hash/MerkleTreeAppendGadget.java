@@ -0,0 +1,146 @@
+package projects.hash;
+
+import java.math.BigInteger;
+
+import circuit.operations.Gadget;
+import circuit.structure.Wire;
+
+import projects.GadgetScopes;
+
+
+/**
+ * Root transition of an append-only tree (see MerkleTreeStore) when a batch of
+ * 2^batchHeight leaves fills the empty subtree number batchIndex:
+ * 
+ *  - the subtree of the new leaves is hashed once (2^batchHeight leaf hashes and
+ *    2^batchHeight - 1 compressions)
+ *  - the old root is the root reached from the empty subtree (zero hash) along the
+ *    frontier, the new root the one reached from the new subtree along the same frontier
+ *  - siblings on the right of the path must be empty subtrees, so nothing was appended
+ *    after the batch position before
+ * 
+ * frontierWires holds the co-path of the subtree, digestWidth words per level from
+ * level batchHeight up to treeHeight - 1. getOutputWires() = old root | new root.
+ * 
+ */
+
+public class MerkleTreeAppendGadget extends Gadget {
+
+	private int digestWidth;
+
+	private int treeHeight;
+	private int batchHeight;
+	private Wire batchIndexWire;
+	private Wire[][] leafWires;
+	private Wire[] frontierWires;
+	private Wire[] oldRoot;
+	private Wire[] newRoot;
+
+	private int leafWordBitWidth;
+	private HashFunction hashFunction;
+
+	public MerkleTreeAppendGadget(Wire batchIndexWire, Wire[][] leafWires, Wire[] frontierWires, int leafWordBitWidth,
+			int treeHeight, HashFunction hashFunction, String... desc) {
+
+		super(desc);
+		int batchHeight = Integer.numberOfTrailingZeros(leafWires.length);
+		if (leafWires.length != 1 << batchHeight || batchHeight > treeHeight) {
+			throw new IllegalArgumentException("The batch must be a power of two not larger than the tree: " + leafWires.length);
+		}
+		this.batchIndexWire = batchIndexWire;
+		this.treeHeight = treeHeight;
+		this.batchHeight = batchHeight;
+		this.leafWires = leafWires;
+		this.frontierWires = frontierWires;
+		this.leafWordBitWidth = leafWordBitWidth;
+		this.hashFunction = hashFunction;
+		this.digestWidth = hashFunction.getDigestWidth();
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+
+	}
+
+	private void buildCircuit() {
+		BigInteger[][] zeroHashes = MerkleTreeStore.zeroHashes(hashFunction, treeHeight);
+
+		// subtree of the new leaves
+		Wire[][] nodes = new Wire[leafWires.length][];
+		for (int i = 0; i < leafWires.length; i++) {
+			nodes[i] = hashFunction.hash(leafWires[i], leafWordBitWidth, leafWires[i].length * leafWordBitWidth / 8);
+		}
+		for (int width = nodes.length; width > 1; width /= 2) {
+			for (int i = 0; i < width / 2; i++) {
+				nodes[i] = hashFunction.compress(nodes[2 * i], nodes[2 * i + 1]);
+			}
+		}
+
+		// bit i of the subtree index = 1: the path node is a right child (direction bit 0)
+		Wire[] indexBits = batchIndexWire.getBitWires(treeHeight - batchHeight).asArray();
+
+		Wire[] oldHash = generator.createConstantWireArray(zeroHashes[batchHeight]);
+		Wire[] newHash = nodes[0];
+		for (int i = 0; i < treeHeight - batchHeight; i++) {
+			Wire directionBit = indexBits[i].invAsBit();
+
+			// left child: the right sibling has to be empty
+			for (int j = 0; j < digestWidth; j++) {
+				Wire sibling = frontierWires[i * digestWidth + j];
+				generator.addZeroAssertion(directionBit.mul(sibling.sub(zeroHashes[batchHeight + i][j])));
+			}
+
+			oldHash = MerkleTreePathGadget.hashLevel(hashFunction, oldHash, frontierWires, i * digestWidth, directionBit);
+			newHash = MerkleTreePathGadget.hashLevel(hashFunction, newHash, frontierWires, i * digestWidth, directionBit);
+		}
+		oldRoot = oldHash;
+		newRoot = newHash;
+	}
+
+	public Wire[] getOldRoot() {
+		return oldRoot;
+	}
+
+	public Wire[] getNewRoot() {
+		return newRoot;
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		Wire[] out = new Wire[2 * digestWidth];
+		System.arraycopy(oldRoot, 0, out, 0, digestWidth);
+		System.arraycopy(newRoot, 0, out, digestWidth, digestWidth);
+		return out;
+	}
+
+	/** Native counterpart of the new root: the subtree of the leaves folded up the frontier (the tree is not touched) **/
+	public static BigInteger[] computeNewRoot(HashFunction hashFunction, BigInteger[][] leaves, BigInteger[] frontier,
+			long batchIndex, int leafWordBitWidth, int treeHeight) {
+		int digestWidth = hashFunction.getDigestWidth();
+		int batchHeight = Integer.numberOfTrailingZeros(leaves.length);
+		BigInteger[][] nodes = new BigInteger[leaves.length][];
+		for (int i = 0; i < leaves.length; i++) {
+			nodes[i] = hashFunction.nativeHash(leaves[i], leafWordBitWidth, leaves[i].length * leafWordBitWidth / 8);
+		}
+		for (int width = nodes.length; width > 1; width /= 2) {
+			for (int i = 0; i < width / 2; i++) {
+				nodes[i] = hashFunction.nativeCompress(nodes[2 * i], nodes[2 * i + 1]);
+			}
+		}
+		BigInteger[] currentHash = nodes[0];
+		for (int i = 0; i < treeHeight - batchHeight; i++) {
+			BigInteger[] sibling = new BigInteger[digestWidth];
+			System.arraycopy(frontier, i * digestWidth, sibling, 0, digestWidth);
+			if ((batchIndex >>> i & 1) == 0) { // left child
+				currentHash = hashFunction.nativeCompress(currentHash, sibling);
+			} else {
+				currentHash = hashFunction.nativeCompress(sibling, currentHash);
+			}
+		}
+		return currentHash;
+	}
+
+}
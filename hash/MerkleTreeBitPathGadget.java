@@ -0,0 +1,141 @@
+package projects.hash;
+
+import circuit.operations.Gadget;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+import examples.gadgets.hash.SHA256Gadget;
+
+import projects.GadgetScopes;
+
+
+/**
+ * A SHA-256 Merkle tree authentication gadget that keeps the digests as bit vectors
+ * from one level to the next.
+ * 
+ * The current digest never leaves its bit form (SHA256Gadget with binary output), so
+ * only the co-path words are decomposed, and the left/right swap is done on bits.
+ * The mux outputs are packed back into 32-bit words with packAsBits, which keeps the
+ * bits attached to the word, so SHA256Gadget does not split its input again.
+ * 
+ * The co-path layout (8 words per level) and the root (8 words) are the same as in
+ * MerkleTreePathGadget.
+ * 
+ * Cost per level besides the SHA-256 compressions: 8 x 33 to split the co-path words and
+ * 256 for the bit mux, i.e. 520 constraints, against 8 (word mux) + 16 x 33 (split of the
+ * 16 input words in SHA256Gadget) = 536 for MerkleTreePathGadget. Every one of the 512
+ * input bits of a level needs one constraint either way (a booleanity check or a product
+ * with the direction bit), so the gain is marginal; the real saving is in checkRoot().
+ * 
+ */
+
+public class MerkleTreeBitPathGadget extends Gadget {
+
+	private static int digestWidth = 8;
+	private static int wordBitWidth = 32;
+
+	private int treeHeight;
+	private Wire directionSelectorWire;
+	private Wire[] directionSelectorBits;
+	private Wire[] leafWires;
+	private Wire[] intermediateHashWires;
+	private Wire[] outRootBits;
+	private Wire[] outRoot;
+
+	private int leafWordBitWidth;
+	private boolean compressInternalNodes;
+
+	public MerkleTreeBitPathGadget(Wire directionSelectorWire, Wire[] leafWires, Wire[] intermediateHasheWires,
+			int leafWordBitWidth, int treeHeight, boolean compressInternalNodes, String... desc) {
+
+		super(desc);
+		this.directionSelectorWire = directionSelectorWire;
+		this.treeHeight = treeHeight;
+		this.leafWires = leafWires;
+		this.intermediateHashWires = intermediateHasheWires;
+		this.leafWordBitWidth = leafWordBitWidth;
+		this.compressInternalNodes = compressInternalNodes;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+
+	}
+
+	private void buildCircuit() {
+		directionSelectorBits = directionSelectorWire.getBitWires(treeHeight).asArray();
+
+		// Apply CRH to leaf data
+		Wire[] currentBits; // 8 words * 32 bits, LSB first per word
+		GadgetScopes.enter("SHA256Gadget");
+		try {
+			currentBits = new SHA256Gadget(leafWires, leafWordBitWidth, leafWires.length * leafWordBitWidth / 8, true, true)
+					.getOutputWires();
+		} finally {
+			GadgetScopes.exit();
+		}
+
+		// Apply CRH across tree path guided by the direction bits
+		for (int i = 0; i < treeHeight; i++) {
+			Wire[] sibling = new Wire[digestWidth];
+			System.arraycopy(intermediateHashWires, i * digestWidth, sibling, 0, digestWidth);
+			Wire[] siblingBits = new WireArray(sibling).getBits(wordBitWidth).asArray();
+
+			Wire[] leftBits = new Wire[digestWidth * wordBitWidth];
+			Wire[] rightBits = new Wire[digestWidth * wordBitWidth];
+			// a: current bit, b: sibling bit
+			for (int j = 0; j < leftBits.length; j++) {
+				Wire temp = directionSelectorBits[i].mul(currentBits[j].sub(siblingBits[j])); // d(a-b)
+				leftBits[j] = siblingBits[j].add(temp); // b + d(a-b)
+				rightBits[j] = currentBits[j].sub(temp); // a - d(a-b)
+			}
+
+			Wire[] nextInputWords = new Wire[2 * digestWidth];
+			for (int j = 0; j < digestWidth; j++) {
+				nextInputWords[j] = new WireArray(leftBits).packAsBits(j * wordBitWidth, (j + 1) * wordBitWidth);
+				nextInputWords[j + digestWidth] = new WireArray(rightBits).packAsBits(j * wordBitWidth, (j + 1) * wordBitWidth);
+			}
+			GadgetScopes.enter("SHA256Gadget");
+			try {
+				currentBits = new SHA256Gadget(nextInputWords, wordBitWidth, 64, true, !compressInternalNodes).getOutputWires();
+			} finally {
+				GadgetScopes.exit();
+			}
+		}
+		outRootBits = currentBits;
+
+		outRoot = new Wire[digestWidth];
+		for (int j = 0; j < digestWidth; j++) {
+			outRoot[j] = new WireArray(outRootBits).packAsBits(j * wordBitWidth, (j + 1) * wordBitWidth);
+		}
+	}
+
+	/**
+	 * Returns a wire that is non-zero iff the computed root differs from the given
+	 * 8 root words. Both sides are packed as in InputPackingGadget (7 words per field
+	 * element), so the comparison costs 2 checkNonZero instead of 8. The root words
+	 * must be 32-bit values.
+	 */
+	public Wire checkRoot(Wire[] rootWords) {
+		Wire[] actualPacked = InputPackingGadget.pack(outRoot, wordBitWidth);
+		Wire[] expectedPacked = InputPackingGadget.pack(rootWords, wordBitWidth);
+
+		Wire errorAccumulator = generator.getZeroWire();
+		for (int i = 0; i < actualPacked.length; i++) {
+			errorAccumulator = errorAccumulator.add(actualPacked[i].sub(expectedPacked[i]).checkNonZero());
+		}
+		return errorAccumulator;
+	}
+
+	public Wire[] getOutputBits() {
+		return outRootBits;
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return outRoot;
+	}
+
+}
@@ -0,0 +1,149 @@
+package projects.hash;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+/**
+ * Cross-check of MerkleTreeMultiPathGadget: k random leaves of a MerkleTreeStore are
+ * authenticated with one multi-path gadget, and the root it computes has to match
+ * MerkleTreePathGadget.computeRoot() for each of the k leaves. The constraint count is
+ * printed next to the one of k separate MerkleTreePathGadgets on the same inputs.
+ * No libsnark run needed. Exits with 1 on a mismatch.
+ *
+ * usage: MerkleTreeMultiPathCrossCheck [rounds] [treeHeight] [k]
+ */
+public class MerkleTreeMultiPathCrossCheck {
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int treeHeight = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int k = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		Random random = new Random(1);
+		boolean ok = true;
+		for (HashFunction hashFunction : new HashFunction[] { new SHA256HashFunction(), new PoseidonHashFunction() }) {
+			for (int i = 0; i < rounds; i++) {
+				ok &= check(hashFunction, treeHeight, k, random, i);
+			}
+		}
+		System.out.println(ok ? "MerkleTreeMultiPathGadget matches" : "MerkleTreeMultiPathGadget MISMATCH");
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+
+	private static boolean check(HashFunction hashFunction, int treeHeight, int k, Random random, int round)
+			throws Exception {
+		int digestWidth = hashFunction.getDigestWidth();
+		int leafLength = 8;
+		int numLeaves = 1 << treeHeight;
+
+		BigInteger[][] leaves = new BigInteger[numLeaves][leafLength];
+		for (int i = 0; i < numLeaves; i++) {
+			for (int w = 0; w < leafLength; w++) { leaves[i][w] = BigInteger.valueOf(random.nextInt() & 0xFFFFFFFFL); }
+		}
+		TreeSet<Long> positionSet = new TreeSet<Long>();
+		while (positionSet.size() < k) { positionSet.add((long) random.nextInt(numLeaves)); }
+		long[] positions = new long[k];
+		int n = 0;
+		for (long position : positionSet) { positions[n++] = position; }
+
+		final BigInteger[] directionSelectors = new BigInteger[k];
+		final BigInteger[][] leafValues = new BigInteger[k][];
+		final BigInteger[] coPaths = new BigInteger[k * treeHeight * digestWidth];
+		BigInteger[] expectedRoot;
+		File treeFile = File.createTempFile("multipathcheck", ".nodes");
+		treeFile.delete();
+		MerkleTreeStore tree = new MerkleTreeStore(treeFile, treeHeight, treeHeight, hashFunction, 32);
+		try {
+			for (int i = 0; i < numLeaves; i++) { tree.append(leaves[i]); }
+			for (int j = 0; j < k; j++) {
+				directionSelectors[j] = tree.getDirectionSelector(positions[j]);
+				leafValues[j] = leaves[(int) positions[j]];
+				System.arraycopy(tree.getCoPath(positions[j]), 0, coPaths, j * treeHeight * digestWidth, treeHeight * digestWidth);
+			}
+			expectedRoot = tree.getRoot();
+		} finally {
+			tree.close();
+			treeFile.delete();
+		}
+
+		CircuitGenerator multiPath = generator("multipath_check", hashFunction, treeHeight,
+				MerkleTreeMultiPathGadget.mergeHeights(positions), directionSelectors, leafValues, coPaths);
+		multiPath.generateCircuit();
+		multiPath.evalCircuit();
+		ArrayList<Wire> outputs = multiPath.getOutWires();
+		BigInteger[] actual = multiPath.getCircuitEvaluator().getWiresValues(outputs.toArray(new Wire[outputs.size()]));
+
+		String name = hashFunction.getClass().getSimpleName() + " #" + round + " " + Arrays.toString(positions);
+		boolean ok = same(name + " tree root", actual, expectedRoot);
+		for (int j = 0; j < k; j++) {
+			BigInteger[] coPath = new BigInteger[treeHeight * digestWidth];
+			System.arraycopy(coPaths, j * treeHeight * digestWidth, coPath, 0, coPath.length);
+			ok &= same(name + " computeRoot of leaf " + positions[j], actual, MerkleTreePathGadget.computeRoot(
+					hashFunction, directionSelectors[j], leafValues[j], coPath, 32, treeHeight));
+		}
+
+		CircuitGenerator separatePaths = generator("separate_paths_check", hashFunction, treeHeight, null,
+				directionSelectors, leafValues, coPaths);
+		separatePaths.generateCircuit();
+		System.out.println(name + ": " + multiPath.getNumOfConstraints() + " constraints, "
+				+ separatePaths.getNumOfConstraints() + " for " + k + " separate paths");
+		return ok;
+	}
+
+	/** mergeHeights == null: k separate MerkleTreePathGadgets, with all k roots as output **/
+	private static CircuitGenerator generator(String name, final HashFunction hashFunction, final int treeHeight,
+			final int[] mergeHeights, final BigInteger[] directionSelectors, final BigInteger[][] leafValues,
+			final BigInteger[] coPaths) {
+		return new CircuitGenerator(name) {
+			private Wire[] directionSelectorWires;
+			private Wire[][] leafWires;
+			private Wire[] coPathWires;
+
+			@Override
+			protected void buildCircuit() {
+				int k = leafValues.length;
+				int pathLength = treeHeight * hashFunction.getDigestWidth();
+				directionSelectorWires = createInputWireArray(k);
+				leafWires = new Wire[k][];
+				for (int j = 0; j < k; j++) { leafWires[j] = createInputWireArray(leafValues[j].length); }
+				coPathWires = createProverWitnessWireArray(k * pathLength);
+				if (mergeHeights != null) {
+					makeOutputArray(new MerkleTreeMultiPathGadget(directionSelectorWires, leafWires, coPathWires, 32,
+							treeHeight, mergeHeights, hashFunction).getOutputWires());
+					return;
+				}
+				for (int j = 0; j < k; j++) {
+					Wire[] coPath = new Wire[pathLength];
+					System.arraycopy(coPathWires, j * pathLength, coPath, 0, pathLength);
+					makeOutputArray(new MerkleTreePathGadget(directionSelectorWires[j], leafWires[j], coPath, 32,
+							treeHeight, hashFunction).getOutputWires());
+				}
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(directionSelectorWires, directionSelectors);
+				for (int j = 0; j < leafWires.length; j++) { evaluator.setWireValue(leafWires[j], leafValues[j]); }
+				evaluator.setWireValue(coPathWires, coPaths);
+			}
+		};
+	}
+
+	private static boolean same(String name, BigInteger[] actual, BigInteger[] expected) {
+		if (!Arrays.equals(actual, expected)) {
+			System.out.println(name + ": " + Arrays.toString(actual) + " != " + Arrays.toString(expected));
+			return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,150 @@
+package projects.hash;
+
+import circuit.operations.Gadget;
+import circuit.structure.Wire;
+
+import projects.GadgetScopes;
+
+
+/**
+ * Membership of k leaves against a single root, hashing every shared internal node once.
+ * 
+ * The leaves are sorted by position and mergeHeights[j] (j > 0) is the height of the
+ * lowest common ancestor of leaves j-1 and j (see mergeHeights(long[])). This is the only
+ * structural information fixed at circuit generation time; the positions stay witnesses.
+ * 
+ *  - path 0 is hashed all the way up to the root
+ *  - with m = mergeHeights[j], path j is hashed up to height m-1 only. There it is the
+ *    right sibling of the path of leaf a (the first leaf of the left subtree), so its node
+ *    must equal the co-path entry of leaf a at level m-1, i.e. a node that is already
+ *    authenticated by path a. The direction bits at that level are fixed accordingly.
+ * 
+ * MerkleTreeMultiPathCrossCheck compares the root with k single paths and prints the
+ * constraint counts of both.
+ * 
+ * Inputs use the layout of MerkleTreePathGadget for every leaf: one direction selector
+ * per leaf and intermediateHashWires = k consecutive co-paths of digestWidth * treeHeight.
+ * Co-path entries above a leaf's merge height are not used.
+ * 
+ */
+
+public class MerkleTreeMultiPathGadget extends Gadget {
+
+	private int digestWidth;
+
+	private int treeHeight;
+	private Wire[] directionSelectorWires;
+	private Wire[][] leafWires;
+	private Wire[] intermediateHashWires;
+	private int[] mergeHeights;
+	private Wire[] outRoot;
+
+	private int leafWordBitWidth;
+	private HashFunction hashFunction;
+
+	public MerkleTreeMultiPathGadget(Wire[] directionSelectorWires, Wire[][] leafWires, Wire[] intermediateHasheWires,
+			int leafWordBitWidth, int treeHeight, int[] mergeHeights, HashFunction hashFunction, String... desc) {
+
+		super(desc);
+		if (mergeHeights.length != leafWires.length) {
+			throw new IllegalArgumentException("One merge height per leaf expected");
+		}
+		for (int j = 1; j < mergeHeights.length; j++) {
+			if (mergeHeights[j] < 1 || mergeHeights[j] > treeHeight) {
+				throw new IllegalArgumentException("Invalid merge height for leaf " + j + ": " + mergeHeights[j]);
+			}
+			// two merges at the same height need a higher one in between, otherwise the heights
+			// describe no tree and path j would be checked against a node that no path authenticates
+			int a = anchor(mergeHeights, j);
+			if (a != 0 && mergeHeights[a] == mergeHeights[j]) {
+				throw new IllegalArgumentException("Inconsistent merge heights at leaf " + j
+						+ " (use mergeHeights(long[]) on the sorted positions)");
+			}
+		}
+		this.directionSelectorWires = directionSelectorWires;
+		this.treeHeight = treeHeight;
+		this.leafWires = leafWires;
+		this.intermediateHashWires = intermediateHasheWires;
+		this.leafWordBitWidth = leafWordBitWidth;
+		this.mergeHeights = mergeHeights;
+		this.hashFunction = hashFunction;
+		this.digestWidth = hashFunction.getDigestWidth();
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+
+	}
+
+	private void buildCircuit() {
+		int numLeaves = leafWires.length;
+		Wire[][] directionSelectorBits = new Wire[numLeaves][];
+		for (int j = 0; j < numLeaves; j++) {
+			directionSelectorBits[j] = directionSelectorWires[j].getBitWires(treeHeight).asArray();
+		}
+
+		for (int j = 0; j < numLeaves; j++) {
+			int topHeight = (j == 0) ? treeHeight : mergeHeights[j] - 1;
+
+			// Apply CRH to leaf data
+			Wire[] currentHash = hashFunction.hash(leafWires[j], leafWordBitWidth, leafWires[j].length * leafWordBitWidth / 8);
+
+			// Apply CRH across the unshared part of the path
+			for (int i = 0; i < topHeight; i++) {
+				currentHash = MerkleTreePathGadget.hashLevel(hashFunction, currentHash, intermediateHashWires,
+						(j * treeHeight + i) * digestWidth, directionSelectorBits[j][i]);
+			}
+
+			if (j == 0) {
+				outRoot = currentHash;
+				continue;
+			}
+
+			// node j at height m-1 is the right sibling on the (already hashed) path of leaf a
+			int m = mergeHeights[j];
+			int a = anchor(mergeHeights, j);
+
+			generator.addZeroAssertion(directionSelectorBits[j][m - 1]); // j: right child
+			generator.addOneAssertion(directionSelectorBits[a][m - 1]); // a: left child
+			for (int w = 0; w < digestWidth; w++) {
+				generator.addEqualityAssertion(currentHash[w], coPath(a, m - 1, w));
+			}
+		}
+	}
+
+	/** first leaf of the left subtree that leaf j merges with (at height mergeHeights[j]) **/
+	private static int anchor(int[] mergeHeights, int j) {
+		int a = j - 1;
+		while (a > 0 && mergeHeights[a] < mergeHeights[j]) { a--; }
+		return a;
+	}
+
+	private Wire coPath(int leaf, int level, int word) {
+		return intermediateHashWires[(leaf * treeHeight + level) * digestWidth + word];
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return outRoot;
+	}
+
+	/**
+	 * mergeHeights for leaf positions sorted in increasing order (position bit i = 0: left
+	 * child at level i, i.e. the direction selector is the complement of the position).
+	 * mergeHeights[0] is unused and set to 0.
+	 */
+	public static int[] mergeHeights(long[] sortedPositions) {
+		int[] mergeHeights = new int[sortedPositions.length];
+		for (int j = 1; j < sortedPositions.length; j++) {
+			if (sortedPositions[j] <= sortedPositions[j - 1]) {
+				throw new IllegalArgumentException("Positions must be strictly increasing");
+			}
+			mergeHeights[j] = 64 - Long.numberOfLeadingZeros(sortedPositions[j - 1] ^ sortedPositions[j]);
+		}
+		return mergeHeights;
+	}
+
+}
@@ -1,20 +1,23 @@
 package projects.hash;
 
+import java.math.BigInteger;
+
 import circuit.config.Config;
 import circuit.operations.Gadget;
 import circuit.structure.Wire;
-import circuit.structure.WireArray;
-import examples.gadgets.hash.SHA256Gadget;
+
+import projects.GadgetScopes;
 
 
 /**
- * A Merkle tree authentication gadget using the subsetsum hash function
+ * A Merkle tree authentication gadget, generic in the hash function
+ * (SHA-256 by default, see projects.hash.HashFunction)
  * 
  */
 
 public class MerkleTreePathGadget extends Gadget {
 
-	private static int digestWidth = 8;
+	private int digestWidth;
 
 	private int treeHeight;
 	private Wire directionSelectorWire;
@@ -24,9 +27,16 @@ public class MerkleTreePathGadget extends Gadget {
 	private Wire[] outRoot;
 
 	private int leafWordBitWidth;
+	private HashFunction hashFunction;
 
 	public MerkleTreePathGadget(Wire directionSelectorWire, Wire[] leafWires, Wire[] intermediateHasheWires,
 			int leafWordBitWidth, int treeHeight, String... desc) {
+		this(directionSelectorWire, leafWires, intermediateHasheWires, leafWordBitWidth, treeHeight,
+				new SHA256HashFunction(), desc);
+	}
+
+	public MerkleTreePathGadget(Wire directionSelectorWire, Wire[] leafWires, Wire[] intermediateHasheWires,
+			int leafWordBitWidth, int treeHeight, HashFunction hashFunction, String... desc) {
 
 		super(desc);
 		this.directionSelectorWire = directionSelectorWire;
@@ -34,8 +44,15 @@ public class MerkleTreePathGadget extends Gadget {
 		this.leafWires = leafWires;
 		this.intermediateHashWires = intermediateHasheWires;
 		this.leafWordBitWidth = leafWordBitWidth;
-
-		buildCircuit();
+		this.hashFunction = hashFunction;
+		this.digestWidth = hashFunction.getDigestWidth();
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
 
 	}
 
@@ -44,27 +61,11 @@ public class MerkleTreePathGadget extends Gadget {
 		// directionSelectorBits = directionSelectorWire.getBitWires(treeHeight).asArray(); // test code
 
 		// Apply CRH to leaf data
-		Wire[] leafBits = new WireArray(leafWires).getBits(leafWordBitWidth).asArray(); // 10 * 32 bits = 320 bits => array size: 320
-		SHA256Gadget sha2GadgetLeaf = new SHA256Gadget(leafBits, 1, 40, false, true); // integer 4 bytes * 10 = 40 bytes
-		Wire[] currentHash = sha2GadgetLeaf.getOutputWires();
+		Wire[] currentHash = hashFunction.hash(leafWires, leafWordBitWidth, leafWires.length * leafWordBitWidth / 8); // 32 bits * 10 = 40 bytes
 
 		// Apply CRH across tree path guided by the direction bits
 		for (int i = 0; i < treeHeight; i++) {
-			Wire[] inHash = new Wire[2 * digestWidth];
-            // a: currentHash, b: intermediateHash
-			for (int j = 0; j < digestWidth; j++) {
-				Wire temp = currentHash[j].sub(intermediateHashWires[i * digestWidth + j]);
-				Wire temp2 = directionSelectorBits[i].mul(temp);
-				inHash[j] = intermediateHashWires[i * digestWidth + j].add(temp2); // b + d(a-b)
-			}
-			for (int j = digestWidth; j < 2 * digestWidth; j++) {
-				Wire temp = currentHash[j - digestWidth].add(intermediateHashWires[i * digestWidth + j - digestWidth]);
-				inHash[j] = temp.sub(inHash[j - digestWidth]); // a - d(a-b)
-			}
-
-			Wire[] nextInputBits = new WireArray(inHash).getBits(32).asArray(); // BigInteger range: 32 bits => (32 bits * 8) * 2 = 512 bits => array size: 512
-			SHA256Gadget sha2GadgetInter = new SHA256Gadget(nextInputBits, 1, 64, false, true); // 512 bits -div 8-> 64 bytes
-		    currentHash = sha2GadgetInter.getOutputWires();
+			currentHash = hashLevel(hashFunction, currentHash, intermediateHashWires, i * digestWidth, directionSelectorBits[i]);
 		}
 		outRoot = currentHash;
 	}
@@ -74,4 +75,48 @@ public class MerkleTreePathGadget extends Gadget {
 		return outRoot;
 	}
 
+	/**
+	 * One level of the path: the sibling is siblingWires[siblingOffset ..], directionBit = 1 if
+	 * currentHash is the left child. Shared by the Merkle gadgets of this package.
+	 */
+	static Wire[] hashLevel(HashFunction hashFunction, Wire[] currentHash, Wire[] siblingWires, int siblingOffset,
+			Wire directionBit) {
+		int digestWidth = hashFunction.getDigestWidth();
+		Wire[] left = new Wire[digestWidth];
+		Wire[] right = new Wire[digestWidth];
+		// a: currentHash, b: intermediateHash
+		GadgetScopes.enter("mux");
+		try {
+			for (int j = 0; j < digestWidth; j++) {
+				Wire temp = currentHash[j].sub(siblingWires[siblingOffset + j]);
+				Wire temp2 = directionBit.mul(temp);
+				left[j] = siblingWires[siblingOffset + j].add(temp2); // b + d(a-b)
+			}
+			for (int j = 0; j < digestWidth; j++) {
+				Wire temp = currentHash[j].add(siblingWires[siblingOffset + j]);
+				right[j] = temp.sub(left[j]); // a - d(a-b)
+			}
+		} finally {
+			GadgetScopes.exit();
+		}
+		return hashFunction.compress(left, right);
+	}
+
+	/** Native counterpart of buildCircuit(): the root reached from the leaf along the co-path **/
+	public static BigInteger[] computeRoot(HashFunction hashFunction, BigInteger directionSelector, BigInteger[] leaf,
+			BigInteger[] intermediateHashes, int leafWordBitWidth, int treeHeight) {
+		int digestWidth = hashFunction.getDigestWidth();
+		BigInteger[] currentHash = hashFunction.nativeHash(leaf, leafWordBitWidth, leaf.length * leafWordBitWidth / 8);
+		for (int i = 0; i < treeHeight; i++) {
+			BigInteger[] sibling = new BigInteger[digestWidth];
+			System.arraycopy(intermediateHashes, i * digestWidth, sibling, 0, digestWidth);
+			if (directionSelector.testBit(i)) { // d = 1: current node is the left child
+				currentHash = hashFunction.nativeCompress(currentHash, sibling);
+			} else {
+				currentHash = hashFunction.nativeCompress(sibling, currentHash);
+			}
+		}
+		return currentHash;
+	}
+
 }
@@ -0,0 +1,300 @@
+package projects.hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.Wire;
+
+
+/**
+ * Append-only Merkle tree backed by a memory-mapped node file, producing the witnesses
+ * of MerkleTreePathGadget / ZcashMerkleTreePathGadget.
+ *
+ * Hashing is the same as in the gadgets (see MerkleTreePathGadget.computeRoot):
+ * leaf node = H(leaf words), internal node = compress(left, right). Empty leaves are
+ * the all-zero digest and empty subtrees use the precomputed zero hashes of each level.
+ *
+ * The tree has treeHeight levels but only the first 2^capacityLog leaves are stored:
+ * levels 0..capacityLog live in the file (every node of the level, digests of 256 bits
+ * in 32 byte slots), the levels above only ever have one non-empty node and are kept
+ * on the heap, together with the top CACHED_LEVELS stored levels that every path reads.
+ * Appends and path lookups are O(treeHeight). Not thread safe.
+ *
+ * File layout: 64 byte header (magic, treeHeight, capacityLog, digestWidth, size),
+ * then level 0, level 1, ... level capacityLog.
+ *
+ */
+
+public class MerkleTreeStore implements AutoCloseable {
+
+	private static final int MAGIC = 0x4d4b5431; // "MKT1"
+	private static final int HEADER_BYTES = 64;
+	private static final int NODE_BYTES = 32;
+	private static final long SEGMENT_BYTES = 1L << 30; // multiple of NODE_BYTES: nodes never straddle segments
+	private static final int CACHED_LEVELS = 10;
+
+	private final HashFunction hashFunction;
+	private final int digestWidth;
+	private final int wordBytes;
+	private final int treeHeight;
+	private final int capacityLog;
+	private final int leafWordBitWidth;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+	private final long[] levelOffsets;
+
+	private final BigInteger[][] zeroHashes; // zeroHashes[i]: root of an empty subtree of height i
+	private final BigInteger[][][] cachedNodes; // cachedNodes[level][index], levels >= firstCachedLevel
+	private final int firstCachedLevel;
+	private final BigInteger[][] upperNodes; // node 0 of the levels capacityLog..treeHeight
+
+	private long size;
+
+	public MerkleTreeStore(File path, int treeHeight, int capacityLog, HashFunction hashFunction, int leafWordBitWidth)
+			throws IOException {
+		if (capacityLog > treeHeight || capacityLog > 40) {
+			throw new IllegalArgumentException("Invalid capacity: 2^" + capacityLog + " leaves, tree height " + treeHeight);
+		}
+		this.hashFunction = hashFunction;
+		this.digestWidth = hashFunction.getDigestWidth();
+		if (NODE_BYTES % digestWidth != 0) {
+			throw new IllegalArgumentException("Digest does not fit in " + NODE_BYTES + " bytes");
+		}
+		this.wordBytes = NODE_BYTES / digestWidth; // 4 for SHA-256 words, 32 for a field element
+		this.treeHeight = treeHeight;
+		this.capacityLog = capacityLog;
+		this.leafWordBitWidth = leafWordBitWidth;
+
+		levelOffsets = new long[capacityLog + 2];
+		levelOffsets[0] = HEADER_BYTES;
+		for (int level = 0; level <= capacityLog; level++) {
+			levelOffsets[level + 1] = levelOffsets[level] + (1L << (capacityLog - level)) * NODE_BYTES;
+		}
+		long fileLength = levelOffsets[capacityLog + 1];
+
+		boolean exists = path.exists() && path.length() > 0;
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+		if (file.length() < fileLength) {
+			file.setLength(fileLength); // sparse on most file systems
+		}
+		segments = new MappedByteBuffer[(int) ((fileLength + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+		for (int i = 0; i < segments.length; i++) {
+			long start = i * SEGMENT_BYTES;
+			segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_BYTES, fileLength - start));
+		}
+
+		zeroHashes = zeroHashes(hashFunction, treeHeight);
+
+		if (exists) {
+			readHeader();
+		} else {
+			size = 0;
+			writeHeader();
+		}
+
+		firstCachedLevel = Math.max(0, capacityLog - CACHED_LEVELS + 1);
+		cachedNodes = new BigInteger[capacityLog + 1][][];
+		for (int level = firstCachedLevel; level <= capacityLog; level++) {
+			cachedNodes[level] = new BigInteger[1 << (capacityLog - level)][];
+			for (long index = 0; index < levelSize(level); index++) {
+				cachedNodes[level][(int) index] = readNode(level, index);
+			}
+		}
+		upperNodes = new BigInteger[treeHeight + 1][];
+		updateUpperNodes();
+	}
+
+	/** Appends a leaf, returns its position **/
+	public long append(BigInteger[] leaf) {
+		return appendDigest(hashFunction.nativeHash(leaf, leafWordBitWidth, leaf.length * leafWordBitWidth / 8));
+	}
+
+	/** Appends an already hashed leaf (level 0 node), returns its position **/
+	public long appendDigest(BigInteger[] leafDigest) {
+		if (size >= (1L << capacityLog)) {
+			throw new IllegalStateException("Tree is full: " + size + " leaves");
+		}
+		long position = size;
+		size++;
+
+		BigInteger[] node = leafDigest;
+		long index = position;
+		writeNode(0, index, node);
+		for (int level = 0; level < capacityLog; level++) {
+			if ((index & 1) == 0) {
+				node = hashFunction.nativeCompress(node, zeroHashes[level]); // right sibling still empty
+			} else {
+				node = hashFunction.nativeCompress(getNode(level, index - 1), node);
+			}
+			index >>= 1;
+			writeNode(level + 1, index, node);
+		}
+		updateUpperNodes();
+		writeHeader();
+		return position;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public int getTreeHeight() {
+		return treeHeight;
+	}
+
+	public BigInteger[] getRoot() {
+		return upperNodes[treeHeight].clone();
+	}
+
+	public BigInteger[] getLeafDigest(long position) {
+		return getNode(0, position);
+	}
+
+	/** Node at the given level (0: leaves), the zero hash of the level if the subtree is empty **/
+	public BigInteger[] getNode(int level, long index) {
+		if (level >= capacityLog) {
+			return index == 0 ? upperNodes[level].clone() : zeroHashes[level].clone();
+		}
+		if (index >= levelSize(level)) {
+			return zeroHashes[level].clone();
+		}
+		if (level >= firstCachedLevel) {
+			return cachedNodes[level][(int) index].clone();
+		}
+		return readNode(level, index);
+	}
+
+	/** Roots of the empty subtrees of height 0..treeHeight (empty leaf: all-zero digest) **/
+	public static BigInteger[][] zeroHashes(HashFunction hashFunction, int treeHeight) {
+		BigInteger[][] zeroHashes = new BigInteger[treeHeight + 1][];
+		zeroHashes[0] = new BigInteger[hashFunction.getDigestWidth()];
+		Arrays.fill(zeroHashes[0], BigInteger.ZERO);
+		for (int i = 0; i < treeHeight; i++) {
+			zeroHashes[i + 1] = hashFunction.nativeCompress(zeroHashes[i], zeroHashes[i]);
+		}
+		return zeroHashes;
+	}
+
+	/** Siblings of the node (level, index) and of its ancestors, from that level up to the root **/
+	public BigInteger[] getCoPath(int level, long index) {
+		BigInteger[] coPath = new BigInteger[digestWidth * (treeHeight - level)];
+		for (int i = level; i < treeHeight; i++) {
+			System.arraycopy(getNode(i, index ^ 1), 0, coPath, (i - level) * digestWidth, digestWidth);
+			index >>= 1;
+		}
+		return coPath;
+	}
+
+	/** Co-path of a leaf in the layout of intermediateHasheWires: digestWidth words per level, leaf level first **/
+	public BigInteger[] getCoPath(long position) {
+		checkPosition(position);
+		return getCoPath(0, position);
+	}
+
+	/** Direction selector of the gadgets: bit i = 1 if the node of the path at level i is a left child **/
+	public BigInteger getDirectionSelector(long position) {
+		checkPosition(position);
+		BigInteger mask = BigInteger.ONE.shiftLeft(treeHeight).subtract(BigInteger.ONE);
+		return BigInteger.valueOf(position).xor(mask);
+	}
+
+	/** Sets the direction selector and the co-path of a leaf, and optionally the root, in a circuit evaluator **/
+	public void setPathWitness(CircuitEvaluator circuitEvaluator, long position, Wire directionSelector,
+			Wire[] intermediateHashWires, Wire[] rootWires) {
+		circuitEvaluator.setWireValue(directionSelector, getDirectionSelector(position));
+		circuitEvaluator.setWireValue(intermediateHashWires, getCoPath(position));
+		if (rootWires != null) {
+			circuitEvaluator.setWireValue(rootWires, getRoot());
+		}
+	}
+
+	public void flush() {
+		for (MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+		file.close();
+	}
+
+	private void checkPosition(long position) {
+		if (position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException("No leaf at position " + position + " (size " + size + ")");
+		}
+	}
+
+	/** number of non-empty nodes of a stored level **/
+	private long levelSize(int level) {
+		return (size + (1L << level) - 1) >> level;
+	}
+
+	private void updateUpperNodes() {
+		upperNodes[capacityLog] = size == 0 ? zeroHashes[capacityLog] : readNode(capacityLog, 0);
+		for (int level = capacityLog; level < treeHeight; level++) {
+			upperNodes[level + 1] = hashFunction.nativeCompress(upperNodes[level], zeroHashes[level]);
+		}
+	}
+
+	private BigInteger[] readNode(int level, long index) {
+		long offset = levelOffsets[level] + index * NODE_BYTES;
+		MappedByteBuffer segment = segments[(int) (offset / SEGMENT_BYTES)];
+		int position = (int) (offset % SEGMENT_BYTES);
+		BigInteger[] node = new BigInteger[digestWidth];
+		byte[] word = new byte[wordBytes];
+		for (int w = 0; w < digestWidth; w++) {
+			for (int b = 0; b < wordBytes; b++) {
+				word[b] = segment.get(position + w * wordBytes + b);
+			}
+			node[w] = new BigInteger(1, word);
+		}
+		return node;
+	}
+
+	private void writeNode(int level, long index, BigInteger[] node) {
+		long offset = levelOffsets[level] + index * NODE_BYTES;
+		MappedByteBuffer segment = segments[(int) (offset / SEGMENT_BYTES)];
+		int position = (int) (offset % SEGMENT_BYTES);
+		for (int w = 0; w < digestWidth; w++) {
+			byte[] bytes = node[w].toByteArray(); // big endian, may carry a sign byte
+			for (int b = 0; b < wordBytes; b++) {
+				int src = bytes.length - wordBytes + b;
+				segment.put(position + w * wordBytes + b, src >= 0 ? bytes[src] : 0);
+			}
+		}
+		if (cachedNodes != null && level >= firstCachedLevel) {
+			cachedNodes[level][(int) index] = node.clone();
+		}
+	}
+
+	private void writeHeader() {
+		MappedByteBuffer header = segments[0];
+		header.putInt(0, MAGIC);
+		header.putInt(4, treeHeight);
+		header.putInt(8, capacityLog);
+		header.putInt(12, digestWidth);
+		header.putLong(16, size);
+	}
+
+	private void readHeader() throws IOException {
+		MappedByteBuffer header = segments[0];
+		if (header.getInt(0) != MAGIC || header.getInt(4) != treeHeight || header.getInt(8) != capacityLog
+				|| header.getInt(12) != digestWidth) {
+			throw new IOException("Tree file does not match the requested tree parameters");
+		}
+		size = header.getLong(16);
+	}
+
+}
@@ -0,0 +1,92 @@
+package projects.hash;
+
+import java.math.BigInteger;
+
+import circuit.config.Config;
+import circuit.operations.Gadget;
+import circuit.structure.Wire;
+
+import projects.GadgetScopes;
+
+
+/**
+ * MiMC-7 (x^7, 91 rounds) over the BN254 scalar field, used in Miyaguchi-Preneel mode:
+ * 
+ *   h_0 = number of inputs, h_{i+1} = h_i + m_i + E_{h_i}(m_i)
+ * 
+ * where E_k(x) = the 91 rounds x <- (x + k + c_r)^7 followed by + k.
+ * One absorbed element costs 4 * 91 = 364 constraints.
+ * 
+ */
+
+public class MiMCGadget extends Gadget {
+
+	private static final int ROUNDS = 91;
+
+	private static final BigInteger[] ROUND_CONSTANTS = FieldHashConstants.roundConstants("mimc7_bn254", ROUNDS);
+
+	private Wire[] inputs;
+	private Wire digest;
+
+	public MiMCGadget(Wire[] inputs, String... desc) {
+		super(desc);
+		this.inputs = inputs;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		Wire h = generator.createConstantWire(inputs.length);
+		for (int i = 0; i < inputs.length; i++) {
+			h = h.add(inputs[i]).add(encrypt(inputs[i], h));
+		}
+		digest = h;
+	}
+
+	private Wire encrypt(Wire x, Wire k) {
+		for (int round = 0; round < ROUNDS; round++) {
+			Wire t = x.add(k);
+			if (round > 0) {
+				t = t.add(ROUND_CONSTANTS[round]); // first round constant is zero
+			}
+			Wire t2 = t.mul(t);
+			Wire t4 = t2.mul(t2);
+			Wire t6 = t4.mul(t2);
+			x = t6.mul(t);
+		}
+		return x.add(k);
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return new Wire[] { digest };
+	}
+
+	/** Native MiMC-7 hash, same as the circuit above **/
+	public static BigInteger hash(BigInteger[] inputs) {
+		BigInteger p = Config.FIELD_PRIME;
+		BigInteger h = BigInteger.valueOf(inputs.length);
+		for (int i = 0; i < inputs.length; i++) {
+			h = h.add(inputs[i]).add(encrypt(inputs[i], h, p)).mod(p);
+		}
+		return h;
+	}
+
+	private static BigInteger encrypt(BigInteger x, BigInteger k, BigInteger p) {
+		BigInteger seven = BigInteger.valueOf(7);
+		for (int round = 0; round < ROUNDS; round++) {
+			BigInteger t = x.add(k);
+			if (round > 0) {
+				t = t.add(ROUND_CONSTANTS[round]);
+			}
+			x = t.mod(p).modPow(seven, p);
+		}
+		return x.add(k).mod(p);
+	}
+
+}
@@ -0,0 +1,42 @@
+package projects.hash;
+
+import java.math.BigInteger;
+
+import circuit.structure.Wire;
+
+
+/**
+ * MiMC-7 as a Merkle/commitment hash: the digest is a single field element and every
+ * input word is absorbed as its own field element (bitWidthPerInputElement and
+ * totalLengthInBytes only matter to the byte-oriented hashes).
+ * 
+ */
+
+public class MiMCHashFunction implements HashFunction {
+
+	@Override
+	public int getDigestWidth() {
+		return 1;
+	}
+
+	@Override
+	public Wire[] hash(Wire[] inputs, int bitWidthPerInputElement, int totalLengthInBytes, String... desc) {
+		return new MiMCGadget(inputs, desc).getOutputWires();
+	}
+
+	@Override
+	public Wire[] compress(Wire[] left, Wire[] right, String... desc) {
+		return new MiMCGadget(new Wire[] { left[0], right[0] }, desc).getOutputWires();
+	}
+
+	@Override
+	public BigInteger[] nativeHash(BigInteger[] inputs, int bitWidthPerInputElement, int totalLengthInBytes) {
+		return new BigInteger[] { MiMCGadget.hash(inputs) };
+	}
+
+	@Override
+	public BigInteger[] nativeCompress(BigInteger[] left, BigInteger[] right) {
+		return new BigInteger[] { MiMCGadget.hash(new BigInteger[] { left[0], right[0] }) };
+	}
+
+}
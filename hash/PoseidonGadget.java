@@ -0,0 +1,137 @@
+package projects.hash;
+
+import java.math.BigInteger;
+
+import circuit.config.Config;
+import circuit.operations.Gadget;
+import circuit.structure.Wire;
+
+import projects.GadgetScopes;
+
+
+/**
+ * Poseidon sponge over the BN254 scalar field (t = 3, rate = 2, x^5 S-box,
+ * 8 full rounds and 57 partial rounds).
+ * 
+ * The capacity element is initialized with the number of inputs for domain separation,
+ * the inputs are absorbed 2 field elements at a time and the digest is state[1].
+ * A permutation costs 3 * (3 * 8 + 57) = 243 constraints.
+ * 
+ */
+
+public class PoseidonGadget extends Gadget {
+
+	private static final int T = 3;
+	private static final int RATE = T - 1;
+	private static final int FULL_ROUNDS = 8;
+	private static final int PARTIAL_ROUNDS = 57;
+
+	private static final BigInteger[] ROUND_CONSTANTS = FieldHashConstants.roundConstants("poseidon_bn254_t3",
+			(FULL_ROUNDS + PARTIAL_ROUNDS) * T);
+	private static final BigInteger[][] MDS = FieldHashConstants.cauchyMatrix(T);
+
+	private Wire[] inputs;
+	private Wire digest;
+
+	public PoseidonGadget(Wire[] inputs, String... desc) {
+		super(desc);
+		this.inputs = inputs;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		Wire[] state = new Wire[T];
+		state[0] = generator.createConstantWire(inputs.length);
+		for (int i = 1; i < T; i++) { state[i] = generator.getZeroWire(); }
+
+		int offset = 0;
+		do {
+			for (int i = 0; i < RATE && offset < inputs.length; i++, offset++) {
+				state[i + 1] = state[i + 1].add(inputs[offset]);
+			}
+			state = permute(state);
+		} while (offset < inputs.length);
+
+		digest = state[1];
+	}
+
+	private Wire[] permute(Wire[] state) {
+		for (int round = 0; round < FULL_ROUNDS + PARTIAL_ROUNDS; round++) {
+			boolean fullRound = round < FULL_ROUNDS / 2 || round >= FULL_ROUNDS / 2 + PARTIAL_ROUNDS;
+			for (int i = 0; i < T; i++) {
+				state[i] = state[i].add(ROUND_CONSTANTS[round * T + i]);
+				if (fullRound || i == 0) {
+					state[i] = sbox(state[i]);
+				}
+			}
+			Wire[] next = new Wire[T];
+			for (int i = 0; i < T; i++) {
+				next[i] = generator.getZeroWire();
+				for (int j = 0; j < T; j++) {
+					next[i] = next[i].add(state[j].mul(MDS[i][j])); // constant multiplication: no constraint
+				}
+			}
+			state = next;
+		}
+		return state;
+	}
+
+	private Wire sbox(Wire x) {
+		Wire x2 = x.mul(x);
+		Wire x4 = x2.mul(x2);
+		return x4.mul(x);
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return new Wire[] { digest };
+	}
+
+	/** Native Poseidon sponge, same as the circuit above **/
+	public static BigInteger hash(BigInteger[] inputs) {
+		BigInteger p = Config.FIELD_PRIME;
+		BigInteger[] state = new BigInteger[T];
+		state[0] = BigInteger.valueOf(inputs.length);
+		for (int i = 1; i < T; i++) { state[i] = BigInteger.ZERO; }
+
+		int offset = 0;
+		do {
+			for (int i = 0; i < RATE && offset < inputs.length; i++, offset++) {
+				state[i + 1] = state[i + 1].add(inputs[offset]).mod(p);
+			}
+			state = permute(state, p);
+		} while (offset < inputs.length);
+
+		return state[1];
+	}
+
+	private static BigInteger[] permute(BigInteger[] state, BigInteger p) {
+		BigInteger five = BigInteger.valueOf(5);
+		for (int round = 0; round < FULL_ROUNDS + PARTIAL_ROUNDS; round++) {
+			boolean fullRound = round < FULL_ROUNDS / 2 || round >= FULL_ROUNDS / 2 + PARTIAL_ROUNDS;
+			for (int i = 0; i < T; i++) {
+				state[i] = state[i].add(ROUND_CONSTANTS[round * T + i]).mod(p);
+				if (fullRound || i == 0) {
+					state[i] = state[i].modPow(five, p);
+				}
+			}
+			BigInteger[] next = new BigInteger[T];
+			for (int i = 0; i < T; i++) {
+				next[i] = BigInteger.ZERO;
+				for (int j = 0; j < T; j++) {
+					next[i] = next[i].add(state[j].multiply(MDS[i][j]));
+				}
+				next[i] = next[i].mod(p);
+			}
+			state = next;
+		}
+		return state;
+	}
+
+}
@@ -0,0 +1,109 @@
+package projects.hash;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+/**
+ * Cross-check of SHA256CompressionGadget:
+ * - native compress() of a padded one-block message against the JDK SHA-256 digest
+ *   (a message of at most 55 bytes is exactly one compression of its padded block),
+ * - circuit evaluation of the gadget against native compress() on random blocks,
+ * - the sample input of MTMSHA256CircuitGenerator for every hash function (Error == 0).
+ * No libsnark run needed. Exits with 1 on a mismatch.
+ */
+public class SHA256CompressionCrossCheck {
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		Random random = new Random(1);
+		boolean ok = true;
+		for (int i = 0; i < rounds; i++) {
+			ok &= checkAgainstJdk(random, i);
+			ok &= checkCircuit(random, i);
+		}
+		ok &= checkTreeSample(new MTMSHA256CircuitGenerator("tree_2_sha256_check", 2));
+		ok &= checkTreeSample(new MTMSHA256CircuitGenerator("tree_2_sha256_compress_check", 2, new SHA256CompressionHashFunction()));
+		ok &= checkTreeSample(new MTMSHA256CircuitGenerator("tree_2_sha256_bits_check", 2, new SHA256HashFunction(), true));
+		ok &= checkTreeSample(new MTMSHA256CircuitGenerator("tree_2_sha256_compress_bits_check", 2,
+				new SHA256CompressionHashFunction(), true));
+		ok &= checkTreeSample(new MTMSHA256CircuitGenerator("tree_2_poseidon_check", 2, new PoseidonHashFunction()));
+		System.out.println(ok ? "SHA256CompressionGadget matches" : "SHA256CompressionGadget MISMATCH");
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+
+	private static boolean checkAgainstJdk(Random random, int round) throws Exception {
+		byte[] message = new byte[random.nextInt(56)];
+		random.nextBytes(message);
+		byte[] block = new byte[64];
+		System.arraycopy(message, 0, block, 0, message.length);
+		block[message.length] = (byte) 0x80;
+		long bitLength = 8L * message.length;
+		for (int i = 0; i < 8; i++) {
+			block[63 - i] = (byte) (bitLength >>> (8 * i));
+		}
+		BigInteger[] expected = SHA256HashFunction.digestToWords(MessageDigest.getInstance("SHA-256").digest(message));
+		BigInteger[] actual = SHA256CompressionGadget.compress(bytes(block), 8);
+		return same("JDK #" + round, actual, expected);
+	}
+
+	private static boolean checkCircuit(Random random, int round) {
+		byte[] block = new byte[64];
+		random.nextBytes(block);
+		final BigInteger[] inputs = bytes(block);
+		CircuitGenerator generator = new CircuitGenerator("sha256_compression_check") {
+			private Wire[] inputWires;
+
+			@Override
+			protected void buildCircuit() {
+				inputWires = createInputWireArray(64);
+				makeOutputArray(new SHA256CompressionGadget(inputWires, 8).getOutputWires());
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputWires, inputs);
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		ArrayList<Wire> outputs = generator.getOutWires();
+		BigInteger[] actual = generator.getCircuitEvaluator().getWiresValues(outputs.toArray(new Wire[outputs.size()]));
+		return same("circuit #" + round, actual, SHA256CompressionGadget.compress(inputs, 8));
+	}
+
+	private static boolean checkTreeSample(MTMSHA256CircuitGenerator generator) {
+		generator.generateCircuit();
+		generator.evalCircuit();
+		ArrayList<Wire> outputs = generator.getOutWires();
+		BigInteger error = generator.getCircuitEvaluator().getWireValue(outputs.get(outputs.size() - 1));
+		if (error.signum() != 0) {
+			System.out.println(generator.getName() + ": sample input gives Error " + error);
+			return false;
+		}
+		return true;
+	}
+
+	private static BigInteger[] bytes(byte[] block) {
+		BigInteger[] inputs = new BigInteger[block.length];
+		for (int i = 0; i < block.length; i++) { inputs[i] = BigInteger.valueOf(block[i] & 0xFF); }
+		return inputs;
+	}
+
+	private static boolean same(String name, BigInteger[] actual, BigInteger[] expected) {
+		if (!Arrays.equals(actual, expected)) {
+			System.out.println(name + ": " + Arrays.toString(actual) + " != " + Arrays.toString(expected));
+			return false;
+		}
+		return true;
+	}
+
+}
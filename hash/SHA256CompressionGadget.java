@@ -0,0 +1,105 @@
+package projects.hash;
+
+import java.math.BigInteger;
+
+import circuit.operations.Gadget;
+import circuit.structure.Wire;
+import examples.gadgets.hash.SHA256Gadget;
+
+import projects.GadgetScopes;
+
+
+/**
+ * The SHA-256 compression function applied once to a single 512-bit block with the
+ * standard IV, without the padding block (SHA256Compress in the Zcash spec).
+ * 
+ * For a 64-byte node input this is one compression instead of two, i.e. about half
+ * the constraints of the padded SHA256Gadget. The digest is 8 words of 32 bits.
+ * 
+ */
+
+public class SHA256CompressionGadget extends Gadget {
+
+	private static final int[] IV = { 0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c,
+			0x1f83d9ab, 0x5be0cd19 };
+
+	private static final int[] K = { 0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1,
+			0x923f82a4, 0xab1c5ed5, 0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe,
+			0x9bdc06a7, 0xc19bf174, 0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa,
+			0x5cb0a9dc, 0x76f988da, 0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147,
+			0x06ca6351, 0x14292967, 0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb,
+			0x81c2c92e, 0x92722c85, 0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624,
+			0xf40e3585, 0x106aa070, 0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a,
+			0x5b9cca4f, 0x682e6ff3, 0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb,
+			0xbef9a3f7, 0xc67178f2 };
+
+	private Wire[] inputs;
+	private int bitWidthPerInputElement;
+	private Wire[] outDigest;
+
+	public SHA256CompressionGadget(Wire[] inputs, int bitWidthPerInputElement, String... desc) {
+		super(desc);
+		if (inputs.length * bitWidthPerInputElement != 512) {
+			throw new IllegalArgumentException("SHA-256 compression takes exactly one 512-bit block");
+		}
+		this.inputs = inputs;
+		this.bitWidthPerInputElement = bitWidthPerInputElement;
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private void buildCircuit() {
+		// without padding, SHA256Gadget runs exactly one compression round per 64-byte block starting from the IV
+		SHA256Gadget sha2Gadget = new SHA256Gadget(inputs, bitWidthPerInputElement, 64, false, false, description);
+		outDigest = sha2Gadget.getOutputWires();
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return outDigest;
+	}
+
+	/**
+	 * Native reference: compression of the 64-byte block seen by the gadget
+	 * (same byte packing as SHA256Gadget, see SHA256HashFunction.toBytes).
+	 */
+	public static BigInteger[] compress(BigInteger[] inputs, int bitWidthPerInputElement) {
+		byte[] block = SHA256HashFunction.toBytes(inputs, bitWidthPerInputElement, 64);
+
+		int[] w = new int[64];
+		for (int i = 0; i < 16; i++) {
+			w[i] = ((block[4 * i] & 0xFF) << 24) | ((block[4 * i + 1] & 0xFF) << 16) | ((block[4 * i + 2] & 0xFF) << 8)
+					| (block[4 * i + 3] & 0xFF);
+		}
+		for (int i = 16; i < 64; i++) {
+			int s0 = Integer.rotateRight(w[i - 15], 7) ^ Integer.rotateRight(w[i - 15], 18) ^ (w[i - 15] >>> 3);
+			int s1 = Integer.rotateRight(w[i - 2], 17) ^ Integer.rotateRight(w[i - 2], 19) ^ (w[i - 2] >>> 10);
+			w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+		}
+
+		int a = IV[0], b = IV[1], c = IV[2], d = IV[3], e = IV[4], f = IV[5], g = IV[6], h = IV[7];
+		for (int i = 0; i < 64; i++) {
+			int S1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+			int ch = (e & f) ^ (~e & g);
+			int temp1 = h + S1 + ch + K[i] + w[i];
+			int S0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+			int maj = (a & b) ^ (a & c) ^ (b & c);
+			int temp2 = S0 + maj;
+			h = g; g = f; f = e; e = d + temp1;
+			d = c; c = b; b = a; a = temp1 + temp2;
+		}
+
+		int[] state = { IV[0] + a, IV[1] + b, IV[2] + c, IV[3] + d, IV[4] + e, IV[5] + f, IV[6] + g, IV[7] + h };
+		BigInteger[] digest = new BigInteger[8];
+		for (int i = 0; i < 8; i++) {
+			digest[i] = BigInteger.valueOf(state[i] & 0xFFFFFFFFL);
+		}
+		return digest;
+	}
+
+}
@@ -0,0 +1,34 @@
+package projects.hash;
+
+import java.math.BigInteger;
+
+import util.Util;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+
+
+/**
+ * SHA-256 for the leaves (the leaf length is not a multiple of 64 bytes, so it keeps
+ * the padding) and the raw compression function for the internal nodes, like the
+ * Zcash note commitment tree. Roots differ from the padded SHA256HashFunction tree.
+ * 
+ */
+
+public class SHA256CompressionHashFunction extends SHA256HashFunction {
+
+	@Override
+	public Wire[] compress(Wire[] left, Wire[] right, String... desc) {
+		Wire[] inputBits = new WireArray(Util.concat(left, right)).getBits(32).asArray(); // (32 bits * 8) * 2 = 512 bits
+		SHA256CompressionGadget compressionGadget = new SHA256CompressionGadget(inputBits, 1, desc);
+		return compressionGadget.getOutputWires();
+	}
+
+	@Override
+	public BigInteger[] nativeCompress(BigInteger[] left, BigInteger[] right) {
+		BigInteger[] inputs = new BigInteger[left.length + right.length];
+		System.arraycopy(left, 0, inputs, 0, left.length);
+		System.arraycopy(right, 0, inputs, left.length, right.length);
+		return SHA256CompressionGadget.compress(inputs, 32);
+	}
+
+}
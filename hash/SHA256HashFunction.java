@@ -0,0 +1,112 @@
+package projects.hash;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import util.Util;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+import examples.gadgets.hash.SHA256Gadget;
+
+import projects.GadgetScopes;
+
+
+/**
+ * SHA-256 with padding, digest = 8 words of 32 bits. This is the hash that was
+ * hard-wired in the gadgets before, so circuits built with it are unchanged.
+ * 
+ */
+
+public class SHA256HashFunction implements HashFunction {
+
+	private static int digestWidth = 8;
+
+	@Override
+	public int getDigestWidth() {
+		return digestWidth;
+	}
+
+	@Override
+	public Wire[] hash(Wire[] inputs, int bitWidthPerInputElement, int totalLengthInBytes, String... desc) {
+		GadgetScopes.enter("SHA256Gadget");
+		try {
+			return new SHA256Gadget(inputs, bitWidthPerInputElement, totalLengthInBytes, false, true, desc).getOutputWires();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	@Override
+	public Wire[] compress(Wire[] left, Wire[] right, String... desc) {
+		Wire[] inputBits;
+		GadgetScopes.enter("getBits"); // repacking of the 16 digest words, not part of SHA-256 itself
+		try {
+			inputBits = new WireArray(Util.concat(left, right)).getBits(32).asArray(); // (32 bits * 8) * 2 = 512 bits
+		} finally {
+			GadgetScopes.exit();
+		}
+		GadgetScopes.enter("SHA256Gadget");
+		try {
+			return new SHA256Gadget(inputBits, 1, 64, false, true, desc).getOutputWires(); // 512 bits -div 8-> 64 bytes
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	@Override
+	public BigInteger[] nativeHash(BigInteger[] inputs, int bitWidthPerInputElement, int totalLengthInBytes) {
+		return digestToWords(sha256(toBytes(inputs, bitWidthPerInputElement, totalLengthInBytes)));
+	}
+
+	@Override
+	public BigInteger[] nativeCompress(BigInteger[] left, BigInteger[] right) {
+		BigInteger[] inputs = new BigInteger[2 * digestWidth];
+		System.arraycopy(left, 0, inputs, 0, digestWidth);
+		System.arraycopy(right, 0, inputs, digestWidth, digestWidth);
+		return nativeHash(inputs, 32, 64);
+	}
+
+	/**
+	 * Byte stream seen by SHA256Gadget: every input element is split into
+	 * bitWidthPerInputElement bits (LSB first) and the concatenated bits are read
+	 * 8 at a time, so a 32-bit word contributes its bytes in little-endian order.
+	 */
+	public static byte[] toBytes(BigInteger[] inputs, int bitWidthPerInputElement, int totalLengthInBytes) {
+		byte[] bytes = new byte[totalLengthInBytes];
+		int bitIndex = 0;
+		for (int i = 0; i < inputs.length; i++) {
+			for (int j = 0; j < bitWidthPerInputElement; j++, bitIndex++) {
+				if (bitIndex >= totalLengthInBytes * 8) {
+					return bytes;
+				}
+				if (inputs[i].testBit(j)) {
+					bytes[bitIndex / 8] |= (byte) (1 << (bitIndex % 8));
+				}
+			}
+		}
+		return bytes;
+	}
+
+	/** 32 digest bytes -> 8 words, as returned by SHA256Gadget when binaryOutput is false **/
+	public static BigInteger[] digestToWords(byte[] digest) {
+		BigInteger[] words = new BigInteger[digest.length / 4];
+		for (int i = 0; i < words.length; i++) {
+			long word = 0;
+			for (int j = 0; j < 4; j++) {
+				word = (word << 8) | (digest[4 * i + j] & 0xFFL);
+			}
+			words[i] = BigInteger.valueOf(word);
+		}
+		return words;
+	}
+
+	private static byte[] sha256(byte[] message) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(message);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
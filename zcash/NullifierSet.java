@@ -0,0 +1,209 @@
+package projects.zcash;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.StampedLock;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.Wire;
+
+/**
+ * Verifier side set of spent serial numbers (sn_old of the JoinSplit circuit, see
+ * ZcashJoinSplitCircuitGenerator.serialNumbersFromPublicInputs), kept off-heap in a
+ * memory-mapped file so that it survives restarts. The sn_old of the simplified Pour circuit
+ * is not bound by its proof and must not be used here.
+ *
+ * A serial number is the 256-bit digest packed from its 8 words (word 0 first, big endian),
+ * stored in an open addressing table of 32 byte slots with linear probing (the all-zero
+ * digest marks an empty slot). A Bloom filter in front of the table (10 bits per slot,
+ * 7 probes) answers most lookups of fresh serial numbers without touching the table.
+ * SHA-256 digests are uniform, so the words themselves are used as hash values.
+ *
+ * One writer and any number of readers: spend() takes the write lock, contains() runs
+ * as an optimistic read and falls back to the read lock if a write interfered.
+ *
+ * File layout: 64 byte header (magic, capacity, size), Bloom filter, table.
+ */
+public class NullifierSet implements AutoCloseable {
+
+	private static final int MAGIC = 0x4e554c31; // "NUL1"
+	private static final int HEADER_BYTES = 64;
+	private static final int KEY_BYTES = 32;
+	private static final int WORDS = 8;
+	private static final int BLOOM_BITS_PER_SLOT = 10;
+	private static final int BLOOM_PROBES = 7;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final StampedLock lock = new StampedLock();
+
+	private final int capacity; // power of two
+	private final long bloomBits;
+	private final int tableOffset;
+	private final int maxSize;
+
+	private volatile int size;
+
+	public NullifierSet(File path, int capacityLog) throws IOException {
+		if (capacityLog < 4 || capacityLog > 25) {
+			throw new IllegalArgumentException("Capacity must be between 2^4 and 2^25 slots: 2^" + capacityLog);
+		}
+		this.capacity = 1 << capacityLog;
+		this.bloomBits = (long) capacity * BLOOM_BITS_PER_SLOT;
+		this.tableOffset = HEADER_BYTES + (int) ((bloomBits + 63) / 64 * 8);
+		this.maxSize = capacity / 4 * 3; // load factor 0.75
+		long fileLength = tableOffset + (long) capacity * KEY_BYTES;
+
+		boolean exists = path.exists() && path.length() > 0;
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+		if (file.length() < fileLength) {
+			file.setLength(fileLength);
+		}
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileLength);
+
+		if (exists) {
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != capacity) {
+				throw new IOException("Nullifier file does not match the requested capacity");
+			}
+			size = buffer.getInt(8);
+		} else {
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, capacity);
+			buffer.putInt(8, 0);
+			size = 0;
+		}
+	}
+
+	/** true if the serial number (8 words of 32 bits) has been spent **/
+	public boolean contains(BigInteger[] sn) {
+		int[] key = toKey(sn);
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			boolean found = mightContain(key) && find(key) >= 0;
+			if (lock.validate(stamp)) {
+				return found;
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			return mightContain(key) && find(key) >= 0;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/** Marks the serial number as spent, false if it already was (double spend) **/
+	public boolean spend(BigInteger[] sn) {
+		int[] key = toKey(sn);
+		long stamp = lock.writeLock();
+		try {
+			int slot = find(key);
+			if (slot >= 0) {
+				return false;
+			}
+			if (size >= maxSize) {
+				throw new IllegalStateException("Nullifier set is full: " + size + " serial numbers");
+			}
+			slot = -slot - 1; // first empty slot of the probe sequence
+			int offset = tableOffset + slot * KEY_BYTES;
+			for (int w = 0; w < WORDS; w++) {
+				buffer.putInt(offset + 4 * w, key[w]);
+			}
+			for (int i = 0; i < BLOOM_PROBES; i++) {
+				long bit = bloomBit(key, i);
+				int byteOffset = HEADER_BYTES + (int) (bit >>> 3);
+				buffer.put(byteOffset, (byte) (buffer.get(byteOffset) | (1 << (bit & 7))));
+			}
+			size++;
+			buffer.putInt(8, size);
+			return true;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/** Serial number read from the circuit, e.g. getSn_old()[i] of ZcashJoinSplitCircuitGenerator after evalCircuit() **/
+	public boolean contains(CircuitEvaluator circuitEvaluator, Wire[] sn_old) {
+		return contains(circuitEvaluator.getWiresValues(sn_old));
+	}
+
+	public boolean spend(CircuitEvaluator circuitEvaluator, Wire[] sn_old) {
+		return spend(circuitEvaluator.getWiresValues(sn_old));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void flush() {
+		buffer.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+		file.close();
+	}
+
+	private boolean mightContain(int[] key) {
+		for (int i = 0; i < BLOOM_PROBES; i++) {
+			long bit = bloomBit(key, i);
+			if ((buffer.get(HEADER_BYTES + (int) (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** slot of the key, or -(first empty slot) - 1 if absent **/
+	private int find(int[] key) {
+		int mask = capacity - 1;
+		for (int slot = key[0] & mask;; slot = (slot + 1) & mask) {
+			int offset = tableOffset + slot * KEY_BYTES;
+			boolean empty = true;
+			boolean equal = true;
+			for (int w = 0; w < WORDS; w++) {
+				int stored = buffer.getInt(offset + 4 * w);
+				empty &= stored == 0;
+				equal &= stored == key[w];
+			}
+			if (equal) {
+				return slot;
+			}
+			if (empty) {
+				return -slot - 1;
+			}
+		}
+	}
+
+	private long bloomBit(int[] key, int probe) {
+		return ((key[probe + 1] & 0xFFFFFFFFL) * 31 + (key[0] & 0xFFFFFFFFL)) % bloomBits;
+	}
+
+	private static int[] toKey(BigInteger[] sn) {
+		if (sn.length != WORDS) {
+			throw new IllegalArgumentException("A serial number has " + WORDS + " words");
+		}
+		int[] key = new int[WORDS];
+		boolean zero = true;
+		for (int w = 0; w < WORDS; w++) {
+			if (sn[w].signum() < 0 || sn[w].bitLength() > 32) {
+				throw new IllegalArgumentException("Serial number words are 32 bits");
+			}
+			key[w] = sn[w].intValue();
+			zero &= key[w] == 0;
+		}
+		if (zero) {
+			throw new IllegalArgumentException("The all-zero serial number is reserved");
+		}
+		return key;
+	}
+
+}
@@ -8,7 +8,8 @@ import circuit.eval.CircuitEvaluator;
 import circuit.structure.CircuitGenerator;
 import circuit.structure.Wire;
 
-import examples.gadgets.hash.SHA256Gadget;
+import projects.hash.HashFunction;
+import projects.hash.SHA256HashFunction;
 
 public class ZcashInitCircuitGenerator extends CircuitGenerator {
 
@@ -19,11 +20,20 @@ public class ZcashInitCircuitGenerator extends CircuitGenerator {
     private Wire[] sn_old;
     private Wire[] cm_old, cm_new;
 
-    SHA256Gadget sha2Gadget;
-    private int hashDigestDimension = 8;
+    private HashFunction hashFunction;
+    private int hashDigestDimension;
+    private int keyDimension = 8;
+
+    private BigInteger[] inputValues; // v, p, r, s, a_old_sk, a_new_sk (null: sample values)
 
     public ZcashInitCircuitGenerator(String circuitName) {
+		this(circuitName, new SHA256HashFunction());
+	}
+
+    public ZcashInitCircuitGenerator(String circuitName, HashFunction hashFunction) {
 		super(circuitName);
+		this.hashFunction = hashFunction;
+		this.hashDigestDimension = hashFunction.getDigestWidth();
 	}
 
 	@Override
@@ -33,28 +43,25 @@ public class ZcashInitCircuitGenerator extends CircuitGenerator {
         p = createInputWire();
         r = createInputWire();
         s = createInputWire();
-        a_old_sk = createInputWireArray(hashDigestDimension);
-        a_new_sk = createInputWireArray(hashDigestDimension);
+        a_old_sk = createInputWireArray(keyDimension);
+        a_new_sk = createInputWireArray(keyDimension);
 
 
         // a_old_pk
-		sha2Gadget = new SHA256Gadget(a_old_sk, 32, 32, false, true);
-		a_old_pk = sha2Gadget.getOutputWires();
+		a_old_pk = hashFunction.hash(a_old_sk, 32, 4 * keyDimension);
 		makeOutputArray(a_old_pk, "a_old_pk");
 
         // a_new_pk
-		sha2Gadget = new SHA256Gadget(a_new_sk, 32, 32, false, true);
-		a_new_pk = sha2Gadget.getOutputWires();
+		a_new_pk = hashFunction.hash(a_new_sk, 32, 4 * keyDimension);
 		makeOutputArray(a_new_pk, "a_new_pk");
 
 
         // sn_old: PRF(a_old_sk | p_old)
-        Wire[] tmp_sn_old = new Wire[hashDigestDimension + 1];
-        for(int i=0; i<hashDigestDimension; i++) { tmp_sn_old[i] = a_old_sk[i]; }
-        tmp_sn_old[hashDigestDimension] = p;
+        Wire[] tmp_sn_old = new Wire[keyDimension + 1];
+        for(int i=0; i<keyDimension; i++) { tmp_sn_old[i] = a_old_sk[i]; }
+        tmp_sn_old[keyDimension] = p;
 
-        sha2Gadget = new SHA256Gadget(tmp_sn_old, 32, 36, false, true); // 32 bytes + 4 bytes
-		sn_old = sha2Gadget.getOutputWires();
+		sn_old = hashFunction.hash(tmp_sn_old, 32, 4 * (keyDimension + 1)); // 32 bytes + 4 bytes
 		makeOutputArray(sn_old, "sn_old");
 
 
@@ -63,15 +70,13 @@ public class ZcashInitCircuitGenerator extends CircuitGenerator {
         tmp_cm_old[0] = r;
         for(int i=0; i<hashDigestDimension; i++) { tmp_cm_old[i+1] = a_old_pk[i]; }
         tmp_cm_old[hashDigestDimension+1] = p;
-        sha2Gadget = new SHA256Gadget(tmp_cm_old, 32, 36, false, true); // 32 bytes + 4 bytes
-		cm_old = sha2Gadget.getOutputWires();
+		cm_old = hashFunction.hash(tmp_cm_old, 32, 4 * (hashDigestDimension + 1)); // 32 bytes + 4 bytes
 
         tmp_cm_old = new Wire[1 + hashDigestDimension + 1];
         tmp_cm_old[0] = s;
         for(int i=0; i<hashDigestDimension; i++) { tmp_cm_old[i+1] = cm_old[i]; }
         tmp_cm_old[hashDigestDimension+1] = v;
-        sha2Gadget = new SHA256Gadget(tmp_cm_old, 32, 36, false, true); // 32 bytes + 4 bytes
-		cm_old = sha2Gadget.getOutputWires();
+		cm_old = hashFunction.hash(tmp_cm_old, 32, 4 * (hashDigestDimension + 1)); // 32 bytes + 4 bytes
         makeOutputArray(cm_old, "cm_old");
 
 
@@ -80,26 +85,53 @@ public class ZcashInitCircuitGenerator extends CircuitGenerator {
         tmp_cm_new[0] = r;
         for(int i=0; i<hashDigestDimension; i++) { tmp_cm_new[i+1] = a_new_pk[i]; }
         tmp_cm_new[hashDigestDimension+1] = p;
-        sha2Gadget = new SHA256Gadget(tmp_cm_new, 32, 36, false, true); // 32 bytes + 4 bytes
-		cm_new = sha2Gadget.getOutputWires();
+		cm_new = hashFunction.hash(tmp_cm_new, 32, 4 * (hashDigestDimension + 1)); // 32 bytes + 4 bytes
 
         tmp_cm_new = new Wire[1 + hashDigestDimension + 1];
         tmp_cm_new[0] = s;
         for(int i=0; i<hashDigestDimension; i++) { tmp_cm_new[i+1] = cm_new[i]; }
         tmp_cm_new[hashDigestDimension+1] = v;
-        sha2Gadget = new SHA256Gadget(tmp_cm_new, 32, 36, false, true); // 32 bytes + 4 bytes
-		cm_new = sha2Gadget.getOutputWires();
+		cm_new = hashFunction.hash(tmp_cm_new, 32, 4 * (hashDigestDimension + 1)); // 32 bytes + 4 bytes
         makeOutputArray(cm_new, "cm_new");
 	}
 
+	/** Use these values instead of the sample ones (v, p, r, s are shared by both coins as in the circuit) **/
+	public void setInput(BigInteger v, BigInteger p, BigInteger r, BigInteger s, BigInteger[] a_old_sk, BigInteger[] a_new_sk) {
+		inputValues = new BigInteger[4 + 2 * keyDimension];
+		inputValues[0] = v;
+		inputValues[1] = p;
+		inputValues[2] = r;
+		inputValues[3] = s;
+		System.arraycopy(a_old_sk, 0, inputValues, 4, keyDimension);
+		System.arraycopy(a_new_sk, 0, inputValues, 4 + keyDimension, keyDimension);
+	}
+
+	public Wire[] getA_old_pk() { return a_old_pk; }
+	public Wire[] getA_new_pk() { return a_new_pk; }
+	public Wire[] getSn_old() { return sn_old; }
+	public Wire[] getCm_old() { return cm_old; }
+	public Wire[] getCm_new() { return cm_new; }
+
 	@Override
 	public void generateSampleInput(CircuitEvaluator circuitEvaluator) {
+        if (inputValues != null) {
+            Wire[] in = new Wire[4 + 2 * keyDimension];
+            in[0] = v;
+            in[1] = p;
+            in[2] = r;
+            in[3] = s;
+            System.arraycopy(a_old_sk, 0, in, 4, keyDimension);
+            System.arraycopy(a_new_sk, 0, in, 4 + keyDimension, keyDimension);
+            circuitEvaluator.setWireValue(in, inputValues);
+            return;
+        }
+
         circuitEvaluator.setWireValue(v, new BigInteger("118")); // Random Value
         circuitEvaluator.setWireValue(p, new BigInteger("112")); // Random Value
         circuitEvaluator.setWireValue(r, new BigInteger("114")); // Random Value
         circuitEvaluator.setWireValue(s, new BigInteger("115")); // Random Value
 
-        for(int i=0; i<hashDigestDimension; i++) {
+        for(int i=0; i<keyDimension; i++) {
             circuitEvaluator.setWireValue(a_old_sk[i], new BigInteger("97111112"));
             circuitEvaluator.setWireValue(a_new_sk[i], new BigInteger("97110112"));
         }
@@ -0,0 +1,343 @@
+package projects.zcash;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import util.Util;
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+import examples.gadgets.hash.SHA256Gadget;
+
+import projects.GadgetScopes;
+import projects.hash.InputPackingGadget;
+import projects.hash.MerkleTreeStore;
+import projects.hash.SHA256HashFunction;
+
+/**
+ * Full Pour (JoinSplit) statement with two old and two new coins:
+ *
+ *   for each old coin i:  a_pk_i = PRF(a_sk_i), sn_i = PRF(a_sk_i | p_i),
+ *                         cm_i = COMM(s_i | COMM(r_i | a_pk_i | p_i) | v_i),
+ *                         cm_i is in the tree of root rt (unless v_i = 0: dummy coin)
+ *   for each new coin j:  cm_new_j = COMM(s_j | COMM(r_j | a_pk_j | p_j) | v_j)
+ *   v_old_0 + v_old_1 = v_new_0 + v_new_1 + v_pub
+ *
+ * The commitments hash all 40 bytes (see ZcashNote, fullCommitment) so that v and p are
+ * bound. Every value is decomposed into bits once and the bits are shared: a_sk and p feed
+ * both PRFs, a_pk and k stay in bit form (SHA256Gadget with binary output) between the
+ * PRF and the two COMM levels and the recomputed cm bits are the Merkle leaf, so the coin
+ * words a_pk and cm are never decomposed again. getConstraintReport() has the constraint
+ * count per component.
+ *
+ * input:   rt, sn_old[2], cm_new[2], v_pub (41 words, or 6 field elements if packed)
+ * witness: path[2], directionSelector[2], c_old[2], a_old_sk[2], c_new[2]
+ *          (coins in the 28 word layout of ZcashNote.toCoin(); the cm words of the coins
+ *          are recomputed, not read)
+ */
+public class ZcashJoinSplitCircuitGenerator extends CircuitGenerator {
+
+	public static final int NUM_OF_INPUTS = 2;
+	public static final int NUM_OF_OUTPUTS = 2;
+
+	private Wire[] rt;
+	private Wire[][] sn_old, cm_new;
+	private Wire v_pub;
+	private Wire[] packedInputs;
+
+	private Wire[][] path, c_old, a_old_sk, c_new;
+	private Wire[] directionSelector;
+
+	private int treeHeight;
+	private int hashDigestDimension = 8;
+	private int keyDimension = ZcashNote.KEY_DIMENSION;
+	private int coinSize = ZcashNote.COIN_SIZE;
+	private int numOfPublicWords = (1 + NUM_OF_INPUTS + NUM_OF_OUTPUTS) * hashDigestDimension + 1;
+	private boolean packPublicInputs;
+
+	private Map<String, Integer> constraintReport = new LinkedHashMap<String, Integer>();
+	private int reportedConstraints;
+	private int constraintBudget = -1;
+
+	public ZcashJoinSplitCircuitGenerator(String circuitName, int treeHeight) {
+		this(circuitName, treeHeight, false);
+	}
+
+	public ZcashJoinSplitCircuitGenerator(String circuitName, int treeHeight, boolean packPublicInputs) {
+		super(circuitName);
+		this.treeHeight = treeHeight;
+		this.packPublicInputs = packPublicInputs;
+	}
+
+	@Override
+	protected void buildCircuit() {
+		constraintReport.clear();
+		reportedConstraints = 0;
+
+		/** declare inputs **/
+
+		sn_old = new Wire[NUM_OF_INPUTS][];
+		cm_new = new Wire[NUM_OF_OUTPUTS][];
+		if (packPublicInputs) {
+			packedInputs = createInputWireArray(InputPackingGadget.numOfElements(numOfPublicWords, 32), "Packed Public Inputs");
+			Wire[] publicWords = new InputPackingGadget(packedInputs, numOfPublicWords, 32).getOutputWires();
+			int offset = 0;
+			rt = slice(publicWords, offset, hashDigestDimension);
+			offset += hashDigestDimension;
+			for(int i=0; i<NUM_OF_INPUTS; i++, offset += hashDigestDimension) { sn_old[i] = slice(publicWords, offset, hashDigestDimension); }
+			for(int j=0; j<NUM_OF_OUTPUTS; j++, offset += hashDigestDimension) { cm_new[j] = slice(publicWords, offset, hashDigestDimension); }
+			v_pub = publicWords[offset];
+		} else {
+			rt = createInputWireArray(hashDigestDimension, "Root");
+			for(int i=0; i<NUM_OF_INPUTS; i++) { sn_old[i] = createInputWireArray(hashDigestDimension, "Serial Number " + i); }
+			for(int j=0; j<NUM_OF_OUTPUTS; j++) { cm_new[j] = createInputWireArray(hashDigestDimension, "Commit " + j); }
+			v_pub = createInputWire("Public Value");
+		}
+
+		path = new Wire[NUM_OF_INPUTS][];
+		directionSelector = new Wire[NUM_OF_INPUTS];
+		c_old = new Wire[NUM_OF_INPUTS][];
+		a_old_sk = new Wire[NUM_OF_INPUTS][];
+		for(int i=0; i<NUM_OF_INPUTS; i++) {
+			path[i] = createProverWitnessWireArray(hashDigestDimension * treeHeight, "Path " + i);
+			directionSelector[i] = createProverWitnessWire("Direction Selector " + i);
+			c_old[i] = createProverWitnessWireArray(coinSize, "Old Coin " + i);
+			a_old_sk[i] = createProverWitnessWireArray(keyDimension, "Secret Key " + i);
+		}
+		c_new = new Wire[NUM_OF_OUTPUTS][];
+		for(int j=0; j<NUM_OF_OUTPUTS; j++) { c_new[j] = createProverWitnessWireArray(coinSize, "New Coin " + j); }
+		report("public inputs");
+
+		/** connect gadgets **/
+
+		Wire errorAccumulator = getZeroWire();
+		v_pub.getBitWires(32); // range check (the coin values are decomposed by the commitments)
+		Wire valueBalance = v_pub.negate();
+		report("value range (v_pub)");
+
+		for(int i=0; i<NUM_OF_INPUTS; i++) {
+			Wire[] skBits = bits(a_old_sk[i]);
+			Wire[] pBits = bits(c_old[i][17]);
+			Wire v = c_old[i][16];
+			report("old coin " + i + ": decomposition");
+
+			// a_pk = PRF(a_sk)
+			Wire[] a_pkBits = sha(skBits, 4 * keyDimension);
+			errorAccumulator = errorAccumulator.add(compare(a_pkBits, slice(c_old[i], 0, hashDigestDimension)));
+			report("old coin " + i + ": PRF addr");
+
+			// sn = PRF(a_sk | p)
+			Wire[] snBits = sha(Util.concat(skBits, pBits), 4 * (keyDimension + 1));
+			errorAccumulator = errorAccumulator.add(compare(snBits, sn_old[i]));
+			report("old coin " + i + ": PRF sn");
+
+			// cm = COMM(s | COMM(r | a_pk | p) | v)
+			Wire[] cmBits = commitment(c_old[i], a_pkBits, pBits);
+			report("old coin " + i + ": COMM");
+
+			// membership of cm, required for non-zero values only (dummy coins)
+			ZcashMerkleTreePathGadget merkleTreeGadget = new ZcashMerkleTreePathGadget(directionSelector[i], cmBits, path[i], 1, treeHeight);
+			Wire[] actualRoot = merkleTreeGadget.getOutputWires();
+			Wire rootError = getZeroWire();
+			for(int w = 0; w < hashDigestDimension; w++){
+				rootError = rootError.add(actualRoot[w].sub(rt[w]).checkNonZero());
+			}
+			errorAccumulator = errorAccumulator.add(rootError.checkNonZero().mul(v.checkNonZero()));
+			report("old coin " + i + ": Merkle path");
+
+			valueBalance = valueBalance.add(v);
+		}
+
+		for(int j=0; j<NUM_OF_OUTPUTS; j++) {
+			Wire[] pBits = bits(c_new[j][17]);
+			Wire[] a_pkBits = bits(slice(c_new[j], 0, hashDigestDimension));
+			Wire[] cmBits = commitment(c_new[j], a_pkBits, pBits);
+			errorAccumulator = errorAccumulator.add(compare(cmBits, cm_new[j]));
+			report("new coin " + j + ": COMM");
+
+			valueBalance = valueBalance.sub(c_new[j][16]);
+		}
+
+		// v values are 32 bits (decomposed by the commitments), the sum cannot wrap around
+		errorAccumulator = errorAccumulator.add(valueBalance.checkNonZero());
+		makeOutput(errorAccumulator.checkNonZero(), "Error if NON-zero");
+		report("value balance");
+	}
+
+	/** cm = COMM(s | k | v), k = COMM(r | a_pk | p), 40 bytes each; v is c[16], r c[18], s c[19] **/
+	private Wire[] commitment(Wire[] coin, Wire[] a_pkBits, Wire[] pBits) {
+		Wire[] kBits = sha(Util.concat(Util.concat(bits(coin[18]), a_pkBits), pBits), 4 * (hashDigestDimension + 2));
+		return sha(Util.concat(Util.concat(bits(coin[19]), kBits), bits(coin[16])), 4 * (hashDigestDimension + 2));
+	}
+
+	/** SHA-256 of a bit stream (LSB first per 32-bit word, as for word inputs), digest as 256 bits **/
+	private Wire[] sha(Wire[] inputBits, int lengthInBytes) {
+		GadgetScopes.enter("SHA256Gadget");
+		try {
+			return new SHA256Gadget(inputBits, 1, lengthInBytes, true, true).getOutputWires();
+		} finally {
+			GadgetScopes.exit();
+		}
+	}
+
+	private Wire[] bits(Wire word) {
+		return word.getBitWires(32).asArray();
+	}
+
+	private Wire[] bits(Wire[] words) {
+		return new WireArray(words).getBits(32).asArray();
+	}
+
+	/** number of 32-bit words of the digest bits that differ from the words **/
+	private Wire compare(Wire[] digestBits, Wire[] words) {
+		Wire error = getZeroWire();
+		for(int w = 0; w < words.length; w++){
+			Wire word = new WireArray(digestBits).packAsBits(32 * w, 32 * (w + 1));
+			error = error.add(word.sub(words[w]).checkNonZero());
+		}
+		return error;
+	}
+
+	private static Wire[] slice(Wire[] wires, int from, int length) {
+		Wire[] out = new Wire[length];
+		System.arraycopy(wires, from, out, 0, length);
+		return out;
+	}
+
+	private void report(String component) {
+		int total = getNumOfConstraints();
+		Integer previous = constraintReport.get(component);
+		constraintReport.put(component, (previous == null ? 0 : previous) + total - reportedConstraints);
+		reportedConstraints = total;
+	}
+
+	/** constraints per component, in circuit order (available after generateCircuit()) **/
+	public Map<String, Integer> getConstraintReport() {
+		return constraintReport;
+	}
+
+	/** total constraint budget checked by printConstraintReport(), -1: none **/
+	public void setConstraintBudget(int constraintBudget) {
+		this.constraintBudget = constraintBudget;
+	}
+
+	/** prints the report, returns false if the budget is exceeded **/
+	public boolean printConstraintReport() {
+		int total = 0;
+		for (Map.Entry<String, Integer> entry : constraintReport.entrySet()) {
+			System.out.println(String.format("  %-32s %10d", entry.getKey(), entry.getValue()));
+			total += entry.getValue();
+		}
+		System.out.println(String.format("  %-32s %10d", "total", total));
+		if (constraintBudget >= 0) {
+			System.out.println(String.format("  %-32s %10d (%s)", "budget", constraintBudget,
+					total <= constraintBudget ? "ok" : "EXCEEDED by " + (total - constraintBudget)));
+		}
+		return constraintBudget < 0 || total <= constraintBudget;
+	}
+
+	/** serial numbers of the old coins, to be checked against the NullifierSet **/
+	public Wire[][] getSn_old() {
+		return sn_old;
+	}
+
+	/** sn_old of every old coin from the public inputs of a proof (without the constant one), as seen by the verifier **/
+	public static BigInteger[][] serialNumbersFromPublicInputs(BigInteger[] publicInputs, boolean packed) {
+		int hashDigestDimension = 8;
+		int numOfPublicWords = (1 + NUM_OF_INPUTS + NUM_OF_OUTPUTS) * hashDigestDimension + 1;
+		BigInteger[] words = packed ? InputPackingGadget.unpack(publicInputs, numOfPublicWords, 32) : publicInputs;
+		BigInteger[][] sn = new BigInteger[NUM_OF_INPUTS][hashDigestDimension];
+		for(int i=0; i<NUM_OF_INPUTS; i++) { // rt | sn_old[2] | cm_new[2] | v_pub
+			System.arraycopy(words, (1 + i) * hashDigestDimension, sn[i], 0, hashDigestDimension);
+		}
+		return sn;
+	}
+
+	/** rt, sn_old, cm_new, v_pub: as separate words or packed, depending on the circuit **/
+	public void setPublicInputs(CircuitEvaluator circuitEvaluator, BigInteger[] rtValue, BigInteger[][] sn_oldValue,
+			BigInteger[][] cm_newValue, BigInteger v_pubValue) {
+		if (packPublicInputs) {
+			BigInteger[] words = new BigInteger[numOfPublicWords];
+			int offset = 0;
+			System.arraycopy(rtValue, 0, words, offset, hashDigestDimension);
+			offset += hashDigestDimension;
+			for(int i=0; i<NUM_OF_INPUTS; i++, offset += hashDigestDimension) { System.arraycopy(sn_oldValue[i], 0, words, offset, hashDigestDimension); }
+			for(int j=0; j<NUM_OF_OUTPUTS; j++, offset += hashDigestDimension) { System.arraycopy(cm_newValue[j], 0, words, offset, hashDigestDimension); }
+			words[offset] = v_pubValue;
+			circuitEvaluator.setWireValue(packedInputs, InputPackingGadget.pack(words, 32));
+		} else {
+			circuitEvaluator.setWireValue(rt, rtValue);
+			for(int i=0; i<NUM_OF_INPUTS; i++) { circuitEvaluator.setWireValue(sn_old[i], sn_oldValue[i]); }
+			for(int j=0; j<NUM_OF_OUTPUTS; j++) { circuitEvaluator.setWireValue(cm_new[j], cm_newValue[j]); }
+			circuitEvaluator.setWireValue(v_pub, v_pubValue);
+		}
+	}
+
+	@Override
+	public void generateSampleInput(CircuitEvaluator circuitEvaluator) {
+		// old coins 100 + 50 = new coins 70 + 60 + v_pub 20
+		ZcashNote[] oldNotes = { sampleNote(100), sampleNote(50) };
+		ZcashNote[] newNotes = { sampleNote(70), sampleNote(60) };
+		BigInteger v_pubValue = BigInteger.valueOf(20);
+
+		File treeFile = null;
+		MerkleTreeStore tree = null;
+		try {
+			treeFile = File.createTempFile("zcash_joinsplit", ".nodes");
+			treeFile.delete();
+			tree = new MerkleTreeStore(treeFile, treeHeight, Math.min(treeHeight, 20), new SHA256HashFunction(), 32);
+			tree.append(sampleNote(1).getCm()); // some other coin
+			long[] positions = new long[NUM_OF_INPUTS];
+			for(int i=0; i<NUM_OF_INPUTS; i++) { positions[i] = tree.append(oldNotes[i].getCm()); }
+
+			BigInteger[][] sn_oldValue = new BigInteger[NUM_OF_INPUTS][];
+			for(int i=0; i<NUM_OF_INPUTS; i++) {
+				tree.setPathWitness(circuitEvaluator, positions[i], directionSelector[i], path[i], null);
+				circuitEvaluator.setWireValue(c_old[i], oldNotes[i].toCoin());
+				circuitEvaluator.setWireValue(a_old_sk[i], oldNotes[i].getA_sk());
+				sn_oldValue[i] = oldNotes[i].getSn();
+			}
+			BigInteger[][] cm_newValue = new BigInteger[NUM_OF_OUTPUTS][];
+			for(int j=0; j<NUM_OF_OUTPUTS; j++) {
+				circuitEvaluator.setWireValue(c_new[j], newNotes[j].toCoin());
+				cm_newValue[j] = newNotes[j].getCm();
+			}
+			setPublicInputs(circuitEvaluator, tree.getRoot(), sn_oldValue, cm_newValue, v_pubValue);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			try {
+				if (tree != null) { tree.close(); }
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			if (treeFile != null) { treeFile.delete(); }
+		}
+	}
+
+	private static ZcashNote sampleNote(long value) {
+		BigInteger[] a_sk = new BigInteger[ZcashNote.KEY_DIMENSION];
+		BigInteger[] pk_enc = new BigInteger[ZcashNote.KEY_DIMENSION];
+		for(int i=0; i<ZcashNote.KEY_DIMENSION; i++) {
+			a_sk[i] = Util.nextRandomBigInteger(32);
+			pk_enc[i] = Util.nextRandomBigInteger(32);
+		}
+		return new ZcashNote(a_sk, pk_enc, BigInteger.valueOf(value), Util.nextRandomBigInteger(32),
+				Util.nextRandomBigInteger(32), Util.nextRandomBigInteger(32), new SHA256HashFunction(), true);
+	}
+
+	public static void main(String[] args) throws Exception {
+		ZcashJoinSplitCircuitGenerator generator = new ZcashJoinSplitCircuitGenerator("zcash_joinsplit_16", 16);
+		// ZcashJoinSplitCircuitGenerator generator = new ZcashJoinSplitCircuitGenerator("zcash_joinsplit_16_packed", 16, true); // 6 public inputs
+		generator.setConstraintBudget(args.length > 0 ? Integer.parseInt(args[0]) : -1);
+		generator.generateCircuit();
+		generator.printConstraintReport();
+		generator.evalCircuit();
+		generator.prepFiles();
+		generator.runLibsnark();
+	}
+}
@@ -3,18 +3,21 @@ package projects.zcash;
 import circuit.config.Config;
 import circuit.operations.Gadget;
 import circuit.structure.Wire;
-import circuit.structure.WireArray;
-import examples.gadgets.hash.SHA256Gadget;
+
+import projects.GadgetScopes;
+import projects.hash.HashFunction;
+import projects.hash.SHA256HashFunction;
 
 
 /**
- * A Merkle tree authentication gadget using the subsetsum hash function
+ * A Merkle tree authentication gadget, generic in the hash function
+ * (SHA-256 by default, see projects.hash.HashFunction)
  * 
  */
 
 public class ZcashMerkleTreePathGadget extends Gadget {
 
-	private static int digestWidth = 8;
+	private int digestWidth;
 
 	private int treeHeight;
 	private Wire directionSelectorWire;
@@ -24,9 +27,16 @@ public class ZcashMerkleTreePathGadget extends Gadget {
 	private Wire[] outRoot;
 
 	private int leafWordBitWidth;
+	private HashFunction hashFunction;
 
 	public ZcashMerkleTreePathGadget(Wire directionSelectorWire, Wire[] leafWires, Wire[] intermediateHasheWires,
 			int leafWordBitWidth, int treeHeight, String... desc) {
+		this(directionSelectorWire, leafWires, intermediateHasheWires, leafWordBitWidth, treeHeight,
+				new SHA256HashFunction(), desc);
+	}
+
+	public ZcashMerkleTreePathGadget(Wire directionSelectorWire, Wire[] leafWires, Wire[] intermediateHasheWires,
+			int leafWordBitWidth, int treeHeight, HashFunction hashFunction, String... desc) {
 
 		super(desc);
 		this.directionSelectorWire = directionSelectorWire;
@@ -34,8 +44,15 @@ public class ZcashMerkleTreePathGadget extends Gadget {
 		this.leafWires = leafWires;
 		this.intermediateHashWires = intermediateHasheWires;
 		this.leafWordBitWidth = leafWordBitWidth;
-
-		buildCircuit();
+		this.hashFunction = hashFunction;
+		this.digestWidth = hashFunction.getDigestWidth();
+
+		GadgetScopes.enter(this, description);
+		try {
+			buildCircuit();
+		} finally {
+			GadgetScopes.exit();
+		}
 
 	}
 
@@ -43,27 +60,24 @@ public class ZcashMerkleTreePathGadget extends Gadget {
 		directionSelectorBits = directionSelectorWire.getBitWires(treeHeight).asArray(); // 7 -> binary: 111 -> 3 bits => array size: 3 = treeHeight
 
 		// Apply CRH to leaf data
-		Wire[] leafBits = new WireArray(leafWires).getBits(leafWordBitWidth).asArray(); // 8 * 32 bits = 256 bits => array size: 256
-		SHA256Gadget sha2GadgetLeaf = new SHA256Gadget(leafBits, 1, 32, false, true); // integer 4 bytes * 8 = 32 bytes
-		Wire[] currentHash = sha2GadgetLeaf.getOutputWires();
+		Wire[] currentHash = hashFunction.hash(leafWires, leafWordBitWidth, leafWires.length * leafWordBitWidth / 8); // 32 bits * 8 = 32 bytes
 
 		// Apply CRH across tree path guided by the direction bits
 		for (int i = 0; i < treeHeight; i++) {
-			Wire[] inHash = new Wire[2 * digestWidth];
+			Wire[] left = new Wire[digestWidth];
+			Wire[] right = new Wire[digestWidth];
             // a: currentHash, b: intermediateHash
 			for (int j = 0; j < digestWidth; j++) {
 				Wire temp = currentHash[j].sub(intermediateHashWires[i * digestWidth + j]);
 				Wire temp2 = directionSelectorBits[i].mul(temp);
-				inHash[j] = intermediateHashWires[i * digestWidth + j].add(temp2); // b + d(a-b)
+				left[j] = intermediateHashWires[i * digestWidth + j].add(temp2); // b + d(a-b)
 			}
-			for (int j = digestWidth; j < 2 * digestWidth; j++) {
-				Wire temp = currentHash[j - digestWidth].add(intermediateHashWires[i * digestWidth + j - digestWidth]);
-				inHash[j] = temp.sub(inHash[j - digestWidth]); // a - d(a-b)
+			for (int j = 0; j < digestWidth; j++) {
+				Wire temp = currentHash[j].add(intermediateHashWires[i * digestWidth + j]);
+				right[j] = temp.sub(left[j]); // a - d(a-b)
 			}
 
-			Wire[] nextInputBits = new WireArray(inHash).getBits(32).asArray(); // BigInteger range: 32 bits => (32 bits * 8) * 2 = 512 bits => array size: 512
-			SHA256Gadget sha2GadgetInter = new SHA256Gadget(nextInputBits, 1, 64, false, true); // 512 bits -div 8-> 64 bytes
-		    currentHash = sha2GadgetInter.getOutputWires();
+		    currentHash = hashFunction.compress(left, right);
 		}
 		outRoot = currentHash;
 	}
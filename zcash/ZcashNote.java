@@ -0,0 +1,125 @@
+package projects.zcash;
+
+import java.math.BigInteger;
+
+import projects.hash.HashFunction;
+import projects.hash.SHA256HashFunction;
+
+/**
+ * A coin (note) and its PRF/COMM values computed off-circuit, with exactly the packing
+ * of ZcashInitCircuitGenerator (32-bit words, read by the hash as in the gadgets):
+ *
+ *   a_pk = PRF(a_sk)                                       (32 bytes)
+ *   sn   = PRF(a_sk | p)                                   (36 bytes)
+ *   k    = COMM(r | a_pk | p)                              (36 bytes)
+ *   cm   = COMM(s | k | v)                                 (36 bytes)
+ *
+ * As in the circuit the COMM inputs are 10 words but only 36 bytes are hashed, so the
+ * last word (p, resp. v) is cut off. Kept on purpose: values must match the circuits.
+ * Notes built with fullCommitment hash all 40 bytes, so that v and p are bound; this is
+ * what ZcashJoinSplitCircuitGenerator checks.
+ *
+ * toCoin() gives the 28 word coin layout of ZcashPourCircuitGenerator:
+ * (a_pk, pk_enc, v, p, r, s, cm).
+ */
+public class ZcashNote {
+
+	public static final int KEY_DIMENSION = 8;
+	public static final int COIN_SIZE = 28;
+
+	private static final int WORD_BIT_WIDTH = 32;
+
+	private final HashFunction hashFunction;
+
+	private final BigInteger[] a_sk;
+	private final BigInteger[] pk_enc;
+	private final BigInteger v, p, r, s;
+
+	private final BigInteger[] a_pk;
+	private final BigInteger[] sn;
+	private final BigInteger[] cm;
+
+	public ZcashNote(BigInteger[] a_sk, BigInteger[] pk_enc, BigInteger v, BigInteger p, BigInteger r, BigInteger s) {
+		this(a_sk, pk_enc, v, p, r, s, new SHA256HashFunction());
+	}
+
+	public ZcashNote(BigInteger[] a_sk, BigInteger[] pk_enc, BigInteger v, BigInteger p, BigInteger r, BigInteger s,
+			HashFunction hashFunction) {
+		this(a_sk, pk_enc, v, p, r, s, hashFunction, false);
+	}
+
+	public ZcashNote(BigInteger[] a_sk, BigInteger[] pk_enc, BigInteger v, BigInteger p, BigInteger r, BigInteger s,
+			HashFunction hashFunction, boolean fullCommitment) {
+		if (a_sk.length != KEY_DIMENSION || pk_enc.length != KEY_DIMENSION) {
+			throw new IllegalArgumentException("Keys must have " + KEY_DIMENSION + " words");
+		}
+		this.hashFunction = hashFunction;
+		this.a_sk = a_sk.clone();
+		this.pk_enc = pk_enc.clone();
+		this.v = v;
+		this.p = p;
+		this.r = r;
+		this.s = s;
+
+		this.a_pk = prfAddr(hashFunction, a_sk);
+		this.sn = prfSn(hashFunction, a_sk, p);
+		this.cm = comm(hashFunction, s, comm(hashFunction, r, a_pk, p, fullCommitment), v, fullCommitment);
+	}
+
+	/** a_pk = PRF(a_sk) **/
+	public static BigInteger[] prfAddr(HashFunction hashFunction, BigInteger[] a_sk) {
+		return hashFunction.nativeHash(a_sk, WORD_BIT_WIDTH, 4 * KEY_DIMENSION);
+	}
+
+	/** sn = PRF(a_sk | p) **/
+	public static BigInteger[] prfSn(HashFunction hashFunction, BigInteger[] a_sk, BigInteger p) {
+		BigInteger[] in = new BigInteger[KEY_DIMENSION + 1];
+		System.arraycopy(a_sk, 0, in, 0, KEY_DIMENSION);
+		in[KEY_DIMENSION] = p;
+		return hashFunction.nativeHash(in, WORD_BIT_WIDTH, 4 * (KEY_DIMENSION + 1)); // 32 bytes + 4 bytes
+	}
+
+	/** COMM(x | digest | y), 4 * (digestWidth + 1) bytes as in the circuit **/
+	public static BigInteger[] comm(HashFunction hashFunction, BigInteger x, BigInteger[] digest, BigInteger y) {
+		return comm(hashFunction, x, digest, y, false);
+	}
+
+	/** COMM(x | digest | y), all 4 * (digestWidth + 2) bytes if fullCommitment **/
+	public static BigInteger[] comm(HashFunction hashFunction, BigInteger x, BigInteger[] digest, BigInteger y,
+			boolean fullCommitment) {
+		int digestWidth = hashFunction.getDigestWidth();
+		BigInteger[] in = new BigInteger[1 + digestWidth + 1];
+		in[0] = x;
+		System.arraycopy(digest, 0, in, 1, digestWidth);
+		in[digestWidth + 1] = y;
+		return hashFunction.nativeHash(in, WORD_BIT_WIDTH, 4 * (digestWidth + (fullCommitment ? 2 : 1)));
+	}
+
+	/** (a_pk, pk_enc, v, p, r, s, cm): the c_old / c_new witness of the Pour circuit **/
+	public BigInteger[] toCoin() {
+		if (cm.length != KEY_DIMENSION) {
+			throw new IllegalStateException("The coin layout holds 8 word (SHA-256) digests");
+		}
+		BigInteger[] coin = new BigInteger[COIN_SIZE];
+		System.arraycopy(a_pk, 0, coin, 0, KEY_DIMENSION);
+		System.arraycopy(pk_enc, 0, coin, KEY_DIMENSION, KEY_DIMENSION);
+		coin[16] = v;
+		coin[17] = p;
+		coin[18] = r;
+		coin[19] = s;
+		System.arraycopy(cm, 0, coin, 20, cm.length);
+		return coin;
+	}
+
+	public HashFunction getHashFunction() { return hashFunction; }
+	public BigInteger[] getA_sk() { return a_sk.clone(); }
+	public BigInteger[] getPk_enc() { return pk_enc.clone(); }
+	public BigInteger getV() { return v; }
+	public BigInteger getP() { return p; }
+	public BigInteger getR() { return r; }
+	public BigInteger getS() { return s; }
+	public BigInteger[] getA_pk() { return a_pk.clone(); }
+	public BigInteger[] getSn() { return sn.clone(); }
+	public BigInteger[] getCm() { return cm.clone(); }
+
+}
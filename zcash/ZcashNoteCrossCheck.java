@@ -0,0 +1,82 @@
+package projects.zcash;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import util.Util;
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.Wire;
+
+import projects.hash.HashFunction;
+import projects.hash.PoseidonHashFunction;
+import projects.hash.SHA256HashFunction;
+
+/**
+ * Cross-check of ZcashNote against circuit evaluation: random coins are evaluated with
+ * ZcashInitCircuitGenerator and every output (a_pk, sn_old, cm_old, cm_new) has to match
+ * the native values. No libsnark run needed. Exits with 1 on a mismatch.
+ */
+public class ZcashNoteCrossCheck {
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		boolean ok = true;
+		for (HashFunction hashFunction : new HashFunction[] { new SHA256HashFunction(), new PoseidonHashFunction() }) {
+			for (int i = 0; i < rounds; i++) {
+				ok &= check(hashFunction, i);
+			}
+		}
+		System.out.println(ok ? "ZcashNote matches the circuit" : "ZcashNote MISMATCH");
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+
+	private static boolean check(HashFunction hashFunction, int round) {
+		BigInteger v = Util.nextRandomBigInteger(32);
+		BigInteger p = Util.nextRandomBigInteger(32);
+		BigInteger r = Util.nextRandomBigInteger(32);
+		BigInteger s = Util.nextRandomBigInteger(32);
+		BigInteger[] a_old_sk = randomWords(ZcashNote.KEY_DIMENSION);
+		BigInteger[] a_new_sk = randomWords(ZcashNote.KEY_DIMENSION);
+		BigInteger[] pk_enc = randomWords(ZcashNote.KEY_DIMENSION); // not part of the Init circuit
+
+		long start = System.nanoTime();
+		ZcashNote oldNote = new ZcashNote(a_old_sk, pk_enc, v, p, r, s, hashFunction);
+		ZcashNote newNote = new ZcashNote(a_new_sk, pk_enc, v, p, r, s, hashFunction);
+		long nativeTime = System.nanoTime() - start;
+
+		ZcashInitCircuitGenerator generator = new ZcashInitCircuitGenerator("zcash_init_check", hashFunction);
+		generator.setInput(v, p, r, s, a_old_sk, a_new_sk);
+		generator.generateCircuit();
+		start = System.nanoTime();
+		generator.evalCircuit();
+		long circuitTime = System.nanoTime() - start;
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+
+		boolean ok = same("a_old_pk", evaluator, generator.getA_old_pk(), oldNote.getA_pk())
+				& same("a_new_pk", evaluator, generator.getA_new_pk(), newNote.getA_pk())
+				& same("sn_old", evaluator, generator.getSn_old(), oldNote.getSn())
+				& same("cm_old", evaluator, generator.getCm_old(), oldNote.getCm())
+				& same("cm_new", evaluator, generator.getCm_new(), newNote.getCm());
+		System.out.println(hashFunction.getClass().getSimpleName() + " #" + round + ": native " + nativeTime / 1000
+				+ " us, circuit evaluation " + circuitTime / 1000 + " us");
+		return ok;
+	}
+
+	private static boolean same(String name, CircuitEvaluator evaluator, Wire[] wires, BigInteger[] expected) {
+		BigInteger[] actual = evaluator.getWiresValues(wires);
+		if (!Arrays.equals(actual, expected)) {
+			System.out.println(name + ": circuit " + Arrays.toString(actual) + " != native " + Arrays.toString(expected));
+			return false;
+		}
+		return true;
+	}
+
+	private static BigInteger[] randomWords(int n) {
+		BigInteger[] words = new BigInteger[n];
+		for (int i = 0; i < n; i++) { words[i] = Util.nextRandomBigInteger(32); }
+		return words;
+	}
+
+}
@@ -0,0 +1,159 @@
+package projects.zcash;
+
+import java.io.File;
+import java.math.BigInteger;
+
+import util.Util;
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+import projects.hash.HashFunction;
+import projects.hash.MerkleTreeAppendGadget;
+import projects.hash.MerkleTreeStore;
+import projects.hash.SHA256HashFunction;
+
+/**
+ * Rollup style note insertion: one proof that appending batchSize commitments (e.g. the
+ * cm_new of several Pour transfers) to the note tree turns rt_old into rt_new.
+ *
+ * input:   rt_old, rt_new, batch index (the batch fills leaves batchIndex*batchSize ..),
+ *          the commitments
+ * witness: frontier of the batch subtree (see MerkleTreeAppendGadget)
+ *
+ * batchSize must be a power of two; a partial batch would have to be padded with notes.
+ */
+public class ZcashNoteInsertionCircuitGenerator extends CircuitGenerator {
+
+	private Wire[] rt_old, rt_new;
+	private Wire batchIndex;
+	private Wire[][] cm;
+	private Wire[] frontier;
+
+	private int treeHeight;
+	private int batchSize;
+	private int batchHeight;
+	private int cmDimension = 8; // commitments: 8 words of 32 bits
+	private HashFunction hashFunction;
+	private int hashDigestDimension;
+
+	private MerkleTreeStore tree; // optional: take the batch from this tree instead of a sample tree
+	private BigInteger[][] batch;
+
+	public ZcashNoteInsertionCircuitGenerator(String circuitName, int treeHeight, int batchSize) {
+		this(circuitName, treeHeight, batchSize, new SHA256HashFunction());
+	}
+
+	public ZcashNoteInsertionCircuitGenerator(String circuitName, int treeHeight, int batchSize, HashFunction hashFunction) {
+		super(circuitName);
+		if (!fits(treeHeight, batchSize)) {
+			throw new IllegalArgumentException("The batch must be a power of two not larger than the tree: "
+					+ batchSize + " leaves, height " + treeHeight);
+		}
+		this.treeHeight = treeHeight;
+		this.batchSize = batchSize;
+		this.batchHeight = Integer.numberOfTrailingZeros(batchSize);
+		this.hashFunction = hashFunction;
+		this.hashDigestDimension = hashFunction.getDigestWidth();
+	}
+
+	/** batchSize is a power of two and a batch subtree fits in the tree **/
+	public static boolean fits(int treeHeight, int batchSize) {
+		return treeHeight >= 0 && treeHeight < 63 && batchSize > 0 && Integer.bitCount(batchSize) == 1
+				&& Integer.numberOfTrailingZeros(batchSize) <= treeHeight;
+	}
+
+	@Override
+	protected void buildCircuit() {
+
+		/** declare inputs **/
+
+		rt_old = createInputWireArray(hashDigestDimension, "Old Root");
+		rt_new = createInputWireArray(hashDigestDimension, "New Root");
+		batchIndex = createInputWire("Batch Index");
+		cm = new Wire[batchSize][];
+		for(int i=0; i<batchSize; i++) { cm[i] = createInputWireArray(cmDimension, "Commit " + i); }
+
+		frontier = createProverWitnessWireArray(hashDigestDimension * (treeHeight - batchHeight), "Frontier");
+
+		/** connect gadget **/
+
+		MerkleTreeAppendGadget appendGadget = new MerkleTreeAppendGadget(batchIndex, cm, frontier, 32, treeHeight, hashFunction);
+		Wire[] actualOldRoot = appendGadget.getOldRoot();
+		Wire[] actualNewRoot = appendGadget.getNewRoot();
+
+		/** Now compare the actual roots with the public known roots **/
+		Wire errorAccumulator = getZeroWire();
+		for(int i = 0; i < hashDigestDimension; i++){
+			errorAccumulator = errorAccumulator.add(actualOldRoot[i].sub(rt_old[i]).checkNonZero());
+			errorAccumulator = errorAccumulator.add(actualNewRoot[i].sub(rt_new[i]).checkNonZero());
+		}
+
+		makeOutput(errorAccumulator.checkNonZero(), "Error if NON-zero");
+	}
+
+	/**
+	 * Prove the append of this batch of commitments to the given tree. The tree is only read
+	 * (rt_new is computed natively), so the input can be generated any number of times; append
+	 * the batch to the tree once the proof is accepted.
+	 */
+	public void setBatch(MerkleTreeStore tree, BigInteger[][] batch) {
+		if (tree.getTreeHeight() != treeHeight || batch.length != batchSize || tree.size() % batchSize != 0) {
+			throw new IllegalArgumentException("Batch does not fit the circuit or is not aligned in the tree");
+		}
+		this.tree = tree;
+		this.batch = batch;
+	}
+
+	@Override
+	public void generateSampleInput(CircuitEvaluator circuitEvaluator) {
+		MerkleTreeStore tree = this.tree;
+		BigInteger[][] batch = this.batch;
+		File sampleFile = null;
+		try {
+			if (tree == null) {
+				// sample: a tree that already holds one batch of notes (if two fit), then a batch of new notes
+				sampleFile = File.createTempFile("zcash_insert", ".nodes");
+				sampleFile.delete();
+				int capacityLog = Math.min(treeHeight, 20);
+				tree = new MerkleTreeStore(sampleFile, treeHeight, capacityLog, hashFunction, 32);
+				if (batchHeight < capacityLog) {
+					for(int i=0; i<batchSize; i++) { tree.append(randomCommitment()); }
+				}
+				batch = new BigInteger[batchSize][];
+				for(int i=0; i<batchSize; i++) { batch[i] = randomCommitment(); }
+			}
+
+			long index = tree.size() / batchSize;
+			BigInteger[] frontierValue = tree.getCoPath(batchHeight, index);
+			circuitEvaluator.setWireValue(batchIndex, BigInteger.valueOf(index));
+			circuitEvaluator.setWireValue(frontier, frontierValue);
+			circuitEvaluator.setWireValue(rt_old, tree.getRoot());
+
+			for(int i=0; i<batchSize; i++) { circuitEvaluator.setWireValue(cm[i], batch[i]); }
+			circuitEvaluator.setWireValue(rt_new,
+					MerkleTreeAppendGadget.computeNewRoot(hashFunction, batch, frontierValue, index, 32, treeHeight));
+
+			if (sampleFile != null) {
+				tree.close();
+				sampleFile.delete();
+			}
+		} catch (java.io.IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private BigInteger[] randomCommitment() {
+		BigInteger[] commitment = new BigInteger[cmDimension];
+		for(int i=0; i<cmDimension; i++) { commitment[i] = Util.nextRandomBigInteger(32); }
+		return commitment;
+	}
+
+	public static void main(String[] args) throws Exception {
+		ZcashNoteInsertionCircuitGenerator generator = new ZcashNoteInsertionCircuitGenerator("zcash_insert_16_4", 16, 4);
+		generator.generateCircuit();
+		generator.evalCircuit();
+		generator.prepFiles();
+		generator.runLibsnark();
+	}
+}
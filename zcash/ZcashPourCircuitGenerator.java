@@ -1,5 +1,7 @@
 package projects.zcash;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
 
 import util.Util;
@@ -8,12 +10,25 @@ import circuit.eval.CircuitEvaluator;
 import circuit.structure.CircuitGenerator;
 import circuit.structure.Wire;
 
+import projects.GadgetScopes;
+import projects.hash.InputPackingGadget;
+import projects.hash.MerkleTreeStore;
+import projects.hash.SHA256HashFunction;
 import projects.zcash.ZcashMerkleTreePathGadget;
 
+/**
+ * Pour with one old and one new coin, membership of cm_old only. The full statement
+ * (PRFs, commitments, value balance, two coins in and out) is ZcashJoinSplitCircuitGenerator.
+ *
+ * sn_old is a public input that this circuit does not constrain (sn = PRF(a_sk | p) is not
+ * computed), so a proof does not bind it to the spent coin: it is no nullifier to check for
+ * double spends. Use ZcashJoinSplitCircuitGenerator with a NullifierSet.
+ */
 public class ZcashPourCircuitGenerator extends CircuitGenerator {
 
 	private Wire[] rt, sn_old, cm_new;
 	private Wire v_pub;
+	private Wire[] packedRoot, packedInputs; // packPublicInputs: rt, then (sn_old | cm_new | v_pub), in a few field elements
 
 	private Wire[] path, c_old, addr_old_sk, c_new;
 	private Wire directionSelector;
@@ -21,10 +36,26 @@ public class ZcashPourCircuitGenerator extends CircuitGenerator {
 	private int treeHeight;
 	private int hashDigestDimension = 8;
 	private int coinSize = 28;
+	private int numOfPublicWords = 3 * hashDigestDimension + 1;
+	private boolean packPublicInputs;
+
+	private MerkleTreeStore tree; // optional source of the co-path, root and direction selector
+	private long treePosition;
+	private ZcashNote treeNote;
 	
 	public ZcashPourCircuitGenerator(String circuitName, int treeHeight) {
+		this(circuitName, treeHeight, false);
+	}
+
+	/**
+	 * packPublicInputs: 5 field elements of 7 words instead of 25 input words (the computed root is not output
+	 * either). rt is packed on its own and compared packed; sn_old, cm_new and v_pub are not unpacked, since
+	 * nothing in this circuit uses them (getSn_old() is null).
+	 */
+	public ZcashPourCircuitGenerator(String circuitName, int treeHeight, boolean packPublicInputs) {
 		super(circuitName);
 		this.treeHeight = treeHeight;
+		this.packPublicInputs = packPublicInputs;
 	}
 
 	@Override
@@ -32,10 +63,16 @@ public class ZcashPourCircuitGenerator extends CircuitGenerator {
 		
 		/** declare inputs **/
 		
-		rt = createInputWireArray(hashDigestDimension, "Root");
-		sn_old = createInputWireArray(hashDigestDimension, "Serial Number");
-		cm_new = createInputWireArray(hashDigestDimension, "Commit");
-		v_pub = createInputWire("Public Value");
+		if (packPublicInputs) {
+			packedRoot = createInputWireArray(InputPackingGadget.numOfElements(hashDigestDimension, 32), "Packed Root");
+			packedInputs = createInputWireArray(
+					InputPackingGadget.numOfElements(numOfPublicWords - hashDigestDimension, 32), "Packed Public Inputs");
+		} else {
+			rt = createInputWireArray(hashDigestDimension, "Root");
+			sn_old = createInputWireArray(hashDigestDimension, "Serial Number");
+			cm_new = createInputWireArray(hashDigestDimension, "Commit");
+			v_pub = createInputWire("Public Value");
+		}
 
 		path = createProverWitnessWireArray(hashDigestDimension * treeHeight, "Path");
 		directionSelector = createProverWitnessWire("Direction Selector");
@@ -51,22 +88,75 @@ public class ZcashPourCircuitGenerator extends CircuitGenerator {
 		Wire[] actualRoot = merkleTreeGadget.getOutputWires();
 		
 		/** Now compare the actual root with the public known root **/
+		GadgetScopes.enter("root comparison");
 		Wire errorAccumulator = getZeroWire();
-		for(int i = 0; i < hashDigestDimension; i++){
-			Wire diff = actualRoot[i].sub(rt[i]);
-			Wire check = diff.checkNonZero();
-			errorAccumulator = errorAccumulator.add(check);
+		try {
+			if (packPublicInputs) {
+				/** Compare the packed actual root with the packed public root (the digest words are 32 bits) **/
+				Wire[] actualPacked = InputPackingGadget.pack(actualRoot, 32);
+				for(int i = 0; i < actualPacked.length; i++){
+					errorAccumulator = errorAccumulator.add(actualPacked[i].sub(packedRoot[i]).checkNonZero());
+				}
+			} else {
+				for(int i = 0; i < hashDigestDimension; i++){
+					Wire diff = actualRoot[i].sub(rt[i]);
+					Wire check = diff.checkNonZero();
+					errorAccumulator = errorAccumulator.add(check);
+				}
+			}
+		} finally {
+			GadgetScopes.exit();
 		}
 
-		makeOutputArray(actualRoot, "Computed Root");
+		if (!packPublicInputs) {
+			makeOutputArray(actualRoot, "Computed Root");
+		}
 		
-		/** Expected mismatch here if the sample input below is tried**/
+		/** Zero for the sample input: the co-path and the root come from a (sample) MerkleTreeStore **/
 		makeOutput(errorAccumulator.checkNonZero(), "Error if NON-zero");
 		
 	}
 
+	/** Take the old coin, its co-path and the root from a tree (the note's cm at position) instead of a sample tree **/
+	public void setTree(MerkleTreeStore tree, long position, ZcashNote note) {
+		if (tree.getTreeHeight() != treeHeight) {
+			throw new IllegalArgumentException("Tree does not match the circuit");
+		}
+		this.tree = tree;
+		this.treePosition = position;
+		this.treeNote = note;
+	}
+
 	@Override
 	public void generateSampleInput(CircuitEvaluator circuitEvaluator) {
+		if (tree != null) {
+			setWitness(circuitEvaluator, tree, treePosition, treeNote);
+			return;
+		}
+
+		// sample tree of any height: some other coin, then the old coin
+		ZcashNote oldNote = sampleNote("97111112", "112111101");
+		File treeFile = null;
+		MerkleTreeStore sampleTree = null;
+		try {
+			treeFile = File.createTempFile("zcash_pour", ".nodes");
+			treeFile.delete();
+			sampleTree = new MerkleTreeStore(treeFile, treeHeight, Math.min(treeHeight, 20), new SHA256HashFunction(), 32);
+			sampleTree.append(sampleNote("97111111", "112111111").getCm());
+			setWitness(circuitEvaluator, sampleTree, sampleTree.append(oldNote.getCm()), oldNote);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			try {
+				if (sampleTree != null) { sampleTree.close(); }
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			if (treeFile != null) { treeFile.delete(); }
+		}
+	}
+
+	private void setWitness(CircuitEvaluator circuitEvaluator, MerkleTreeStore tree, long position, ZcashNote oldNote) {
 
 		///////////////////////////////////////////////////
 		// input x = (rt, sn_old, cm_new, v_pub)         //
@@ -74,38 +164,16 @@ public class ZcashPourCircuitGenerator extends CircuitGenerator {
 		//	- PRF, COMM function => SHA256 function      //
 		///////////////////////////////////////////////////
 
-		// !! rt (hash value): array size 8 <- big integer 32 bits => 256 bits
-		circuitEvaluator.setWireValue(rt[0], new BigInteger("3081078286"));
-		circuitEvaluator.setWireValue(rt[1], new BigInteger("1087911990"));
-		circuitEvaluator.setWireValue(rt[2], new BigInteger("1987305125"));
-		circuitEvaluator.setWireValue(rt[3], new BigInteger("1814218270"));
-		circuitEvaluator.setWireValue(rt[4], new BigInteger("3759931758"));
-		circuitEvaluator.setWireValue(rt[5], new BigInteger("0257844124"));
-		circuitEvaluator.setWireValue(rt[6], new BigInteger("3938464974"));
-		circuitEvaluator.setWireValue(rt[7], new BigInteger("3550324813"));
+		// rt (hash value): array size 8 <- big integer 32 bits => 256 bits, the root of the tree
+		BigInteger[] rtValue = tree.getRoot();
 
-		// sn_old (hash value): PRF(a_old_sk | p_old)
-		circuitEvaluator.setWireValue(sn_old[0], new BigInteger("1842397534"));
-		circuitEvaluator.setWireValue(sn_old[1], new BigInteger("1438854622"));
-		circuitEvaluator.setWireValue(sn_old[2], new BigInteger("1341541397"));
-		circuitEvaluator.setWireValue(sn_old[3], new BigInteger("0008680022"));
-		circuitEvaluator.setWireValue(sn_old[4], new BigInteger("2922258890"));
-		circuitEvaluator.setWireValue(sn_old[5], new BigInteger("0198763429"));
-		circuitEvaluator.setWireValue(sn_old[6], new BigInteger("3258633035"));
-		circuitEvaluator.setWireValue(sn_old[7], new BigInteger("2225199822"));
+		// coins: a_pk, sn, cm computed off-circuit (same values as ZcashInitCircuitGenerator)
+		ZcashNote newNote = sampleNote("97110112", "112110101");
 
+		// sn_old (hash value): PRF(a_old_sk | p_old)
 		// cm_new (hash value): COMM(s_new | COMM(r_new | a_new_pk | p_new) | v_new)
-		circuitEvaluator.setWireValue(cm_new[0], new BigInteger("1426159927"));
-		circuitEvaluator.setWireValue(cm_new[1], new BigInteger("1036572336"));
-		circuitEvaluator.setWireValue(cm_new[2], new BigInteger("3608559607"));
-		circuitEvaluator.setWireValue(cm_new[3], new BigInteger("1604140848"));
-		circuitEvaluator.setWireValue(cm_new[4], new BigInteger("0348381931"));
-		circuitEvaluator.setWireValue(cm_new[5], new BigInteger("1673394319"));
-		circuitEvaluator.setWireValue(cm_new[6], new BigInteger("1976216296"));
-		circuitEvaluator.setWireValue(cm_new[7], new BigInteger("0271883356"));
-
 		// v_pub (value): integer 1 => 32 bits
-		circuitEvaluator.setWireValue(v_pub, new BigInteger("118112"));
+		setPublicInputs(circuitEvaluator, rtValue, oldNote.getSn(), newNote.getCm(), new BigInteger("118112"));
 
 
 		//////////////////////////////////////////////////////////////////
@@ -117,65 +185,88 @@ public class ZcashPourCircuitGenerator extends CircuitGenerator {
 		//	- addr_old_sk = (a_old_sk, sk_old_enc)                      //
 		//////////////////////////////////////////////////////////////////
 
-		// path (hash value array): array size numOfHashValue*8
-		circuitEvaluator.setWireValue(directionSelector, new BigInteger("7")); // 7 -> binary: 111 -> 3 bits
-		for(int i=0; i<hashDigestDimension; i++) { circuitEvaluator.setWireValue(path[i], new BigInteger("1234567890")); }
-		for(int i=hashDigestDimension; i<hashDigestDimension*2; i++) { circuitEvaluator.setWireValue(path[i], new BigInteger("0987654321")); }
-		for(int i=hashDigestDimension*2; i<hashDigestDimension*3; i++) { circuitEvaluator.setWireValue(path[i], new BigInteger("1357924680")); }
+		// path (hash value array): array size treeHeight*8, and the direction selector
+		tree.setPathWitness(circuitEvaluator, position, directionSelector, path, null);
 		
 		// c_old: array size 28 (8*2, 1, 1, 1, 1, 8)
-		circuitEvaluator.setWireValue(c_old[0], new BigInteger("0914240372")); // a_old_pk
-		circuitEvaluator.setWireValue(c_old[1], new BigInteger("3496280708"));
-        circuitEvaluator.setWireValue(c_old[2], new BigInteger("2255551198"));
-        circuitEvaluator.setWireValue(c_old[3], new BigInteger("3184610359"));
-        circuitEvaluator.setWireValue(c_old[4], new BigInteger("3733949825"));
-        circuitEvaluator.setWireValue(c_old[5], new BigInteger("2789508313"));
-        circuitEvaluator.setWireValue(c_old[6], new BigInteger("1416263883"));
-        circuitEvaluator.setWireValue(c_old[7], new BigInteger("2913123281"));
-		for(int i=8; i<hashDigestDimension*2; i++) { circuitEvaluator.setWireValue(c_old[i], new BigInteger("112111101")); } // pk_old_enc
-        circuitEvaluator.setWireValue(c_old[16], new BigInteger("118")); // v
-        circuitEvaluator.setWireValue(c_old[17], new BigInteger("112")); // p
-        circuitEvaluator.setWireValue(c_old[18], new BigInteger("114")); // r
-        circuitEvaluator.setWireValue(c_old[19], new BigInteger("115")); // s
-		circuitEvaluator.setWireValue(c_old[20], new BigInteger("0643332122")); // cm_old
-		circuitEvaluator.setWireValue(c_old[21], new BigInteger("1788938999"));
-		circuitEvaluator.setWireValue(c_old[22], new BigInteger("3968257017"));
-		circuitEvaluator.setWireValue(c_old[23], new BigInteger("0430293487"));
-		circuitEvaluator.setWireValue(c_old[24], new BigInteger("3784306191"));
-		circuitEvaluator.setWireValue(c_old[25], new BigInteger("0785929505"));
-		circuitEvaluator.setWireValue(c_old[26], new BigInteger("0011907385"));
-		circuitEvaluator.setWireValue(c_old[27], new BigInteger("2945716847"));
+		circuitEvaluator.setWireValue(c_old, oldNote.toCoin());
 
 		// addr_old_sk: array size 16 (8, 8)
-		for(int i=0; i<hashDigestDimension; i++) { circuitEvaluator.setWireValue(addr_old_sk[i], new BigInteger("97111112")); } // a_old_sk
+		for(int i=0; i<hashDigestDimension; i++) { circuitEvaluator.setWireValue(addr_old_sk[i], oldNote.getA_sk()[i]); } // a_old_sk
 		for(int i=8; i<hashDigestDimension*2; i++) { circuitEvaluator.setWireValue(addr_old_sk[i], new BigInteger("115111101")); } // sk_old_enc
 
 		// c_new: array size 28 (8*2, 1, 1, 1, 1, 8)
-		circuitEvaluator.setWireValue(c_new[0], new BigInteger("0358622199")); // a_new_pk
-		circuitEvaluator.setWireValue(c_new[1], new BigInteger("2784671395"));
-        circuitEvaluator.setWireValue(c_new[2], new BigInteger("1864958879"));
-        circuitEvaluator.setWireValue(c_new[3], new BigInteger("00590219167"));
-        circuitEvaluator.setWireValue(c_new[4], new BigInteger("4024366671"));
-        circuitEvaluator.setWireValue(c_new[5], new BigInteger("1109992544"));
-        circuitEvaluator.setWireValue(c_new[6], new BigInteger("2890652161"));
-        circuitEvaluator.setWireValue(c_new[7], new BigInteger("3326960328"));
-		for(int i=8; i<hashDigestDimension*2; i++) { circuitEvaluator.setWireValue(c_new[i], new BigInteger("112110101")); } // pk_new_enc
-        circuitEvaluator.setWireValue(c_new[16], new BigInteger("118")); // v
-        circuitEvaluator.setWireValue(c_new[17], new BigInteger("112")); // p
-        circuitEvaluator.setWireValue(c_new[18], new BigInteger("114")); // r
-        circuitEvaluator.setWireValue(c_new[19], new BigInteger("115")); // s
-		circuitEvaluator.setWireValue(c_new[20], new BigInteger("1426159927")); // cm_new
-		circuitEvaluator.setWireValue(c_new[21], new BigInteger("1036572336"));
-		circuitEvaluator.setWireValue(c_new[22], new BigInteger("3608559607"));
-		circuitEvaluator.setWireValue(c_new[23], new BigInteger("1604140848"));
-		circuitEvaluator.setWireValue(c_new[24], new BigInteger("0348381931"));
-		circuitEvaluator.setWireValue(c_new[25], new BigInteger("1673394319"));
-		circuitEvaluator.setWireValue(c_new[26], new BigInteger("1976216296"));
-		circuitEvaluator.setWireValue(c_new[27], new BigInteger("0271883356"));
+		circuitEvaluator.setWireValue(c_new, newNote.toCoin());
+	}
+
+	/** rt, sn_old, cm_new, v_pub: as separate words or packed, depending on the circuit **/
+	public void setPublicInputs(CircuitEvaluator circuitEvaluator, BigInteger[] rtValue, BigInteger[] sn_oldValue,
+			BigInteger[] cm_newValue, BigInteger v_pubValue) {
+		if (packPublicInputs) {
+			BigInteger[] packed = packPublicInputs(rtValue, sn_oldValue, cm_newValue, v_pubValue);
+			for (int i = 0; i < packed.length; i++) {
+				circuitEvaluator.setWireValue(i < packedRoot.length ? packedRoot[i] : packedInputs[i - packedRoot.length], packed[i]);
+			}
+		} else {
+			circuitEvaluator.setWireValue(rt, rtValue);
+			circuitEvaluator.setWireValue(sn_old, sn_oldValue);
+			circuitEvaluator.setWireValue(cm_new, cm_newValue);
+			circuitEvaluator.setWireValue(v_pub, v_pubValue);
+		}
+	}
+
+	/** unconstrained public input, see the class comment; null when the public inputs are packed **/
+	public Wire[] getSn_old() {
+		return sn_old;
+	}
+
+	/** sn_old from the public inputs of a proof (without the constant one), as seen by the verifier; not bound by the proof **/
+	public static BigInteger[] serialNumberFromPublicInputs(BigInteger[] publicInputs, boolean packed) {
+		int hashDigestDimension = 8;
+		BigInteger[] sn = new BigInteger[hashDigestDimension];
+		if (packed) {
+			// pack(rt) | pack(sn_old | cm_new | v_pub)
+			int rtElements = InputPackingGadget.numOfElements(hashDigestDimension, 32);
+			BigInteger[] packedWords = new BigInteger[publicInputs.length - rtElements];
+			System.arraycopy(publicInputs, rtElements, packedWords, 0, packedWords.length);
+			System.arraycopy(InputPackingGadget.unpack(packedWords, 2 * hashDigestDimension + 1, 32), 0, sn, 0, hashDigestDimension);
+		} else {
+			System.arraycopy(publicInputs, hashDigestDimension, sn, 0, hashDigestDimension); // rt | sn_old | cm_new | v_pub
+		}
+		return sn;
+	}
+
+	/** The public input of the packed circuit, as the verifier computes it from a transaction: pack(rt) | pack(sn_old | cm_new | v_pub) **/
+	public static BigInteger[] packPublicInputs(BigInteger[] rtValue, BigInteger[] sn_oldValue, BigInteger[] cm_newValue,
+			BigInteger v_pubValue) {
+		BigInteger[] words = new BigInteger[sn_oldValue.length + cm_newValue.length + 1];
+		System.arraycopy(sn_oldValue, 0, words, 0, sn_oldValue.length);
+		System.arraycopy(cm_newValue, 0, words, sn_oldValue.length, cm_newValue.length);
+		words[words.length - 1] = v_pubValue;
+		BigInteger[] packedRoot = InputPackingGadget.pack(rtValue, 32);
+		BigInteger[] packedWords = InputPackingGadget.pack(words, 32);
+		BigInteger[] packed = new BigInteger[packedRoot.length + packedWords.length];
+		System.arraycopy(packedRoot, 0, packed, 0, packedRoot.length);
+		System.arraycopy(packedWords, 0, packed, packedRoot.length, packedWords.length);
+		return packed;
+	}
+
+	/** sample coin: a_sk and pk_enc words all equal, v = 118, p = 112, r = 114, s = 115 **/
+	private static ZcashNote sampleNote(String a_sk, String pk_enc) {
+		BigInteger[] a_skWords = new BigInteger[ZcashNote.KEY_DIMENSION];
+		BigInteger[] pk_encWords = new BigInteger[ZcashNote.KEY_DIMENSION];
+		for(int i=0; i<ZcashNote.KEY_DIMENSION; i++) {
+			a_skWords[i] = new BigInteger(a_sk);
+			pk_encWords[i] = new BigInteger(pk_enc);
+		}
+		return new ZcashNote(a_skWords, pk_encWords, new BigInteger("118"), new BigInteger("112"), new BigInteger("114"), new BigInteger("115"));
 	}
 	
 	public static void main(String[] args) throws Exception {
 		ZcashPourCircuitGenerator generator = new ZcashPourCircuitGenerator("tree_3_zcash", 3);
+		// ZcashPourCircuitGenerator generator = new ZcashPourCircuitGenerator("tree_3_zcash_packed", 3, true); // 5 public inputs instead of 25
+		// MerkleTreeStore tree = new MerkleTreeStore(new File("tree_3_zcash.nodes"), 3, 3, new SHA256HashFunction(), 32); // real co-path
+		// generator.setTree(tree, tree.append(note.getCm()), note);
 		generator.generateCircuit();
 		generator.evalCircuit();
 		generator.prepFiles();